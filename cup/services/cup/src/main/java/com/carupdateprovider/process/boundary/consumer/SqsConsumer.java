@@ -1,10 +1,17 @@
 package com.carupdateprovider.process.boundary.consumer;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -30,6 +37,7 @@ import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
 
 /**
  * SqsConsumer which start on application startup and continuously polls on the configured SQS queues.
+ * Every queue starts with one listener thread, the number of listeners per queue can be changed at runtime.
  */
 @Slf4j
 @Component
@@ -42,22 +50,82 @@ public class SqsConsumer {
     @Value("${aws.sqs.client.account}")
     private String account;
 
+    @Value("${aws.sqs.maxConcurrency:16}")
+    private int maxConcurrency;
+
     private final RoutingService routingService;
     private final MetricManager metricManager;
     private final SqsClient sqsClient;
 
-    private boolean listen = true;
-    private ExecutorService executorService = null;
+    private volatile boolean listen = true;
+    /**
+     * Created eagerly, so the concurrency can already be set before the listeners are initialised.
+     */
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    /**
+     * Running flags of the listener threads per queue, cleared to stop a listener after its current receive.
+     */
+    private final Map<String, List<AtomicBoolean>> listeners = new ConcurrentHashMap<>();
 
     /**
-     * Initialisation method which starts up one listener thread per configured queue.
+     * Initialisation method which starts up one listener thread per configured queue, unless the concurrency of
+     * the queue was already set.
      */
     @EventListener(ApplicationReadyEvent.class)
-    public void initListeners() {
-        executorService = Executors.newFixedThreadPool(queues.size());
+    public synchronized void initListeners() {
         for (String queue : queues) {
-            executorService.submit(() -> listen(queue));
+            if (!listeners.containsKey(queue)) {
+                setConcurrency(queue, 1);
+            }
+        }
+    }
+
+    /**
+     * Gets the queues consumed by this service, whether their listeners are started yet or not.
+     *
+     * @return names of the consumed queues
+     */
+    public Set<String> getQueues() {
+        return Collections.unmodifiableSet(queues);
+    }
+
+    /**
+     * Gets the number of listener threads per queue.
+     *
+     * @return map with queue names as key and number of listener threads as value
+     */
+    public Map<String, Integer> getConcurrency() {
+        final Map<String, Integer> result = new TreeMap<>();
+        listeners.forEach((queue, running) -> result.put(queue, running.size()));
+        return result;
+    }
+
+    /**
+     * Starts or stops listener threads of a queue, so it is consumed by the given number of threads.
+     * Stopped listeners finish their current receive and the messages received with it first.
+     *
+     * @param queue   queue to change the listeners of
+     * @param threads number of listener threads, limited to between 1 and the max concurrency
+     * @return number of listener threads now consuming the queue
+     * @throws IllegalArgumentException if the queue is not consumed by this service
+     */
+    public synchronized int setConcurrency(final String queue, final int threads) {
+        if (!queues.contains(queue)) {
+            throw new IllegalArgumentException("Queue " + queue + " is not consumed by this service.");
+        }
+        final int target = Math.max(1, Math.min(threads, maxConcurrency));
+        final List<AtomicBoolean> running = listeners.computeIfAbsent(queue, key -> new ArrayList<>());
+        while (running.size() < target) {
+            final AtomicBoolean active = new AtomicBoolean(true);
+            running.add(active);
+            executorService.submit(() -> listen(queue, active));
+        }
+        while (running.size() > target) {
+            running.remove(running.size() - 1)
+                   .set(false);
         }
+        log.info("Consuming {} with {} listener threads", queue, target);
+        return target;
     }
 
     /**
@@ -83,9 +151,10 @@ public class SqsConsumer {
     /**
      * Continuously polls for messages on a queue and processes them.
      *
-     * @param queue queue to listen on
+     * @param queue  queue to listen on
+     * @param active flag of this listener, cleared to stop it
      */
-    private void listen(final String queue) {
+    private void listen(final String queue, final AtomicBoolean active) {
         ReceiveMessageRequest receiveRequest = ReceiveMessageRequest.builder()
                                                                     .queueUrl(account + queue)
                                                                     .maxNumberOfMessages(10)
@@ -93,7 +162,7 @@ public class SqsConsumer {
                                                                     .build();
 
         log.info("Starting listener for {}", queue);
-        while (listen) {
+        while (listen && active.get()) {
             log.debug("Sending new receive request on {}", queue);
             ReceiveMessageResponse response = sqsClient.receiveMessage(receiveRequest);
             response.messages()
@@ -131,6 +200,7 @@ public class SqsConsumer {
                  routingMessage.getSessionId(),
                  millisWaitedInQueue,
                  routingMessage.getQueue());
+        metricManager.recordWaitedInQueue(routingMessage.getQueue(), millisWaitedInQueue);
         metricManager.incConsumed(routingMessage.getQueue());
 
         routingService.route(routingMessage);
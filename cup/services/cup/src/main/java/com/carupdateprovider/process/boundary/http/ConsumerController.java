@@ -0,0 +1,70 @@
+package com.carupdateprovider.process.boundary.http;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.carupdateprovider.process.boundary.consumer.SqsConsumer;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * HTTP interface for changing the number of listener threads per consumed queue at runtime.
+ * Used by MAHA to scale a pod vertically before adding pods.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("consumers")
+public class ConsumerController {
+
+    private final SqsConsumer sqsConsumer;
+
+    /**
+     * Get endpoint for the number of listener threads per consumed queue.
+     *
+     * @return map with queue names as key and number of listener threads as value
+     */
+    @GetMapping("/concurrency")
+    public Map<String, Integer> getConcurrency() {
+        return sqsConsumer.getConcurrency();
+    }
+
+    /**
+     * Put endpoint for setting the number of listener threads of all consumed queues.
+     *
+     * @param threads number of listener threads per queue
+     * @return map with queue names as key and the applied number of listener threads as value
+     */
+    @PutMapping("/concurrency")
+    public Map<String, Integer> setConcurrency(@RequestParam final int threads) {
+        sqsConsumer.getQueues()
+                   .forEach(queue -> sqsConsumer.setConcurrency(queue, threads));
+        return sqsConsumer.getConcurrency();
+    }
+
+    /**
+     * Put endpoint for setting the number of listener threads of a single consumed queue.
+     *
+     * @param queue   queue to change the listeners of
+     * @param threads number of listener threads
+     * @return map with queue names as key and the applied number of listener threads as value
+     * @throws ResponseStatusException with status 404 if the queue is not consumed by this service
+     */
+    @PutMapping("/{queue}/concurrency")
+    public Map<String, Integer> setConcurrency(@PathVariable final String queue, @RequestParam final int threads) {
+        try {
+            sqsConsumer.setConcurrency(queue, threads);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+        return sqsConsumer.getConcurrency();
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.carupdateprovider.process.observability;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -12,6 +13,7 @@ import com.carupdateprovider.process.model.Queue;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -24,6 +26,7 @@ public class MetricManager {
     private static final String APPLICATION = "application:";
     private static final String CONSUMED = APPLICATION + "consumed_from_queue";
     private static final String PRODUCED = APPLICATION + "produced_to_queue";
+    private static final String WAITED_IN_QUEUE = APPLICATION + "waited_in_queue";
 
     @Value("#{'${aws.sqs.consumers}'.split(',')}")
     private String[] consumers;
@@ -54,6 +57,21 @@ public class MetricManager {
                .increment();
     }
 
+    /**
+     * Records how long a message waited between being sent and being consumed from a queue.
+     * Published as histogram, so wait time percentiles can be aggregated over all pods.
+     *
+     * @param queue        queue the message was consumed from.
+     * @param waitedMillis time the message waited in millis.
+     */
+    public void recordWaitedInQueue(final Queue queue, final long waitedMillis) {
+        Timer.builder(WAITED_IN_QUEUE)
+             .tags(createTags(queue.name()))
+             .publishPercentileHistogram()
+             .register(Metrics.globalRegistry)
+             .record(Math.max(0, waitedMillis), TimeUnit.MILLISECONDS);
+    }
+
     private List<Tag> createTags(final String queue) {
         return List.of(new ImmutableTag("queue", queue), new ImmutableTag("application", applicationTag));
     }
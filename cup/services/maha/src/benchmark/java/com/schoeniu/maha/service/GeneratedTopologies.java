@@ -0,0 +1,79 @@
+package com.schoeniu.maha.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+
+/**
+ * Generates scaling configs of synthetic meshes of a given size, e.g. for benchmarks.
+ * Every two neighbouring queues are consumed by the same service.
+ */
+public final class GeneratedTopologies {
+
+    private static final int TREE_BRANCHING = 4;
+
+    public enum Shape {
+        /**
+         * Every queue produces to the next one.
+         */
+        CHAIN,
+        /**
+         * The first queue produces to all others.
+         */
+        FAN_OUT,
+        /**
+         * Every queue produces to four others, forming a tree of logarithmic depth.
+         */
+        TREE
+    }
+
+    private GeneratedTopologies() {
+    }
+
+    /**
+     * @param shape          shape of the mesh
+     * @param numberOfQueues number of queues
+     * @return scaling config with follow-up scaling enabled
+     */
+    public static ScalingConfigProperties generate(final Shape shape, final int numberOfQueues) {
+        final Map<String, ConsumerServiceConfig> consumers = new LinkedHashMap<>();
+        for (int queue = 0; queue < numberOfQueues; queue++) {
+            final ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+            consumer.setServiceName("service-" + queue / 2);
+            consumer.setConsumptionRate(100 + queue % 7 * 20);
+            consumer.setQueuesProducedTo(new LinkedHashMap<>());
+            consumers.put(getQueue(queue), consumer);
+        }
+        for (int queue = 1; queue < numberOfQueues; queue++) {
+            final int producer = switch (shape) {
+                case CHAIN -> queue - 1;
+                case FAN_OUT -> 0;
+                case TREE -> (queue - 1) / TREE_BRANCHING;
+            };
+            final ProducerQueueConfig edge = new ProducerQueueConfig();
+            edge.setRelativeProductionRate(shape == Shape.CHAIN ? 1.0F : 0.5F);
+            consumers.get(getQueue(producer))
+                     .getQueuesProducedTo()
+                     .put(getQueue(queue), edge);
+        }
+
+        final StrategyConfig strategy = new StrategyConfig();
+        strategy.setScalingEnabled(true);
+        strategy.setFollowUpScalingEnabled(true);
+        strategy.setQueueDecreasePerMinute(1.0F);
+        strategy.setMaxNumberOfPods(20);
+        final ScalingConfigProperties scalingConfig = new ScalingConfigProperties();
+        scalingConfig.setStrategy(strategy);
+        scalingConfig.setQueuesConsumedFrom(consumers);
+        return scalingConfig;
+    }
+
+    public static String getQueue(final int queue) {
+        return "QUEUE_" + queue;
+    }
+
+}
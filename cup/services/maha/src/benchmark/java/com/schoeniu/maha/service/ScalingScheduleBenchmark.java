@@ -0,0 +1,152 @@
+package com.schoeniu.maha.service;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.api.SqsApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.service.GeneratedTopologies.Shape;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.ScalingState;
+
+import ch.qos.logback.classic.Logger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Benchmarks of the decision path of a schedule iteration on generated meshes. The I/O is replaced by stubs
+ * answering from memory, so a full iteration measures the CPU and allocations of MAHA itself.
+ * Run with {@code mvn -P benchmark test-compile exec:exec}, which adds the gc profiler for the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScalingScheduleBenchmark {
+
+    private static final String NAMESPACE = "cup";
+
+    @Param({"10", "100", "1000", "10000"})
+    public int numberOfQueues;
+
+    @Param({"CHAIN", "FAN_OUT", "TREE"})
+    public Shape shape;
+
+    private Mesh mesh;
+    private RateService rateService;
+    private ScalingSchedule scalingSchedule;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(ch.qos.logback.classic.Level.WARN);
+
+        final ScalingConfigProperties scalingConfig = GeneratedTopologies.generate(shape, numberOfQueues);
+        final MetricManager metricManager = new MetricManager(new SimpleMeterRegistry(), "maha-benchmark");
+        final MeshService meshService = new MeshService(scalingConfig, NAMESPACE, "");
+        mesh = meshService.getMesh(MeshService.DEFAULT_MESH);
+
+        final Map<String, CompletableFuture<QueueMetrics>> depths = new HashMap<>();
+        for (int queue = 0; queue < numberOfQueues; queue++) {
+            depths.put(GeneratedTopologies.getQueue(queue),
+                       CompletableFuture.completedFuture(new QueueMetrics(queue % 5 * 100, 0, 0)));
+        }
+        final SqsApi sqsApi = new SqsApi(null, metricManager, null) {
+            @Override
+            public CompletableFuture<QueueMetrics> getQueueMetricsAsync(final String queueName) {
+                return depths.get(queueName);
+            }
+        };
+        final PodStartupEstimator podStartupEstimator = new PodStartupEstimator(meshService, metricManager);
+        final Map<String, Integer> replicas = new HashMap<>();
+        final K8sApi k8sApi = new K8sApi(null, null, null, List.of(), meshService, metricManager, null) {
+            @Override
+            public void scaleDeployment(final String namespace, final String deployment, final int replicaCount) {
+                replicas.put(deployment, replicaCount);
+            }
+
+            @Override
+            public Map<String, Integer> getReplicasPerDeployment(final String namespace) {
+                return replicas;
+            }
+        };
+        for (int service = 0; service < mesh.getTopology()
+                                            .getNumberOfServices(); service++) {
+            replicas.put(mesh.getTopology()
+                             .getService(service), 1);
+        }
+
+        rateService = new RateService(new ConsumptionRateEstimator(meshService, null, metricManager),
+                                      new ProductionRatioEstimator(meshService, null, metricManager));
+        scalingSchedule = new ScalingSchedule(metricManager,
+                                              new QueueDepthPoller(List.of(new SqsQueueMetricsSource(sqsApi)),
+                                                                   metricManager),
+                                              k8sApi,
+                                              rateService,
+                                              new QueueForecaster(metricManager),
+                                              podStartupEstimator,
+                                              new WaitTimeEstimator(meshService, null, metricManager),
+                                              new PodBudgetAllocator(metricManager),
+                                              new ConcurrencyScaler(k8sApi, null),
+                                              meshService,
+                                              new LeaderElectionService(k8sApi,
+                                                                        metricManager,
+                                                                        false,
+                                                                        NAMESPACE,
+                                                                        "maha-leader",
+                                                                        15,
+                                                                        "benchmark"),
+                                              new AdaptiveTickTrigger(metricManager, 250, 1000, 5000, 0.1F),
+                                              Clock.systemUTC());
+        // the first iteration scales every service, the measured ones run in steady state
+        scalingSchedule.schedule();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        scalingSchedule.shutdown();
+    }
+
+    @Benchmark
+    public float[] calcTotalQueueRates() {
+        final ScalingState state = mesh.getState();
+        rateService.calcTotalQueueRates(mesh, state.getOriginRates(), state.getEdgeRates(), state.getTotalRates());
+        return state.getTotalRates();
+    }
+
+    @Benchmark
+    public int[] calcRequiredPods() {
+        scalingSchedule.calcRequiredPods(mesh);
+        return mesh.getState()
+                   .getRequiredPods();
+    }
+
+    @Benchmark
+    public ScalingState schedule() {
+        scalingSchedule.schedule();
+        return mesh.getState();
+    }
+
+}
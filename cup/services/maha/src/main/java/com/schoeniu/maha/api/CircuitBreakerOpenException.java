@@ -0,0 +1,12 @@
+package com.schoeniu.maha.api;
+
+/**
+ * Thrown instead of calling an API whose circuit breaker is open.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    public CircuitBreakerOpenException(final String api) {
+        super("Circuit breaker of " + api + " is open, the call was not sent.");
+    }
+
+}
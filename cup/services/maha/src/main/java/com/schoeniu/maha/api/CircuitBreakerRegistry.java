@@ -0,0 +1,88 @@
+package com.schoeniu.maha.api;
+
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.util.CircuitBreaker;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Circuit breakers of the APIs MAHA depends on, one per API, created on first use. Exports the state of every
+ * breaker as gauge and logs its transitions.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class CircuitBreakerRegistry {
+
+    @Value("${circuit-breaker.failureThreshold:5}")
+    private int failureThreshold;
+
+    @Value("${circuit-breaker.openMillis:10000}")
+    private long openMillis;
+
+    private final MetricManager metricManager;
+    private final Clock clock;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * Checks whether a call to an API may be sent. The outcome of every permitted call has to be recorded.
+     *
+     * @param api name of the API
+     * @return true if the call may be sent, false if the breaker of the API is open
+     */
+    public boolean tryAcquire(final String api) {
+        final CircuitBreaker circuitBreaker = get(api);
+        final CircuitBreaker.State before = circuitBreaker.getState();
+        final boolean permitted = circuitBreaker.tryAcquire(clock.millis());
+        exportTransition(api, before, circuitBreaker.getState());
+        return permitted;
+    }
+
+    /**
+     * Records the outcome of a permitted call to an API.
+     *
+     * @param api     name of the API
+     * @param success false if the API was not available, e.g. the call timed out or failed with a server error
+     */
+    public void record(final String api, final boolean success) {
+        final CircuitBreaker circuitBreaker = get(api);
+        final CircuitBreaker.State before = circuitBreaker.getState();
+        if (success) {
+            circuitBreaker.recordSuccess();
+        } else {
+            circuitBreaker.recordFailure(clock.millis());
+        }
+        exportTransition(api, before, circuitBreaker.getState());
+    }
+
+    private CircuitBreaker get(final String api) {
+        return circuitBreakers.computeIfAbsent(api, key -> {
+            metricManager.setCircuitBreakerStateGauge(key, CircuitBreaker.State.CLOSED.ordinal());
+            return new CircuitBreaker(failureThreshold, openMillis);
+        });
+    }
+
+    private void exportTransition(final String api,
+                                  final CircuitBreaker.State before,
+                                  final CircuitBreaker.State after) {
+        if (before == after) {
+            return;
+        }
+        if (after == CircuitBreaker.State.OPEN) {
+            log.warn("Circuit breaker of {} opened, calls are rejected for {} millis.", api, openMillis);
+        } else {
+            log.info("Circuit breaker of {} is {}.", api, after);
+        }
+        metricManager.setCircuitBreakerStateGauge(api, after.ordinal());
+    }
+
+}
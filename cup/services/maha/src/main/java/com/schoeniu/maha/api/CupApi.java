@@ -0,0 +1,52 @@
+package com.schoeniu.maha.api;
+
+import java.net.URI;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.schoeniu.maha.observability.MetricManager;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * CUP Api, called on single pods of the CUP services
+ */
+@RequiredArgsConstructor
+@Service
+public class CupApi {
+
+    private static final String API = "cup";
+    private static final String SET_CONCURRENCY = "set_concurrency";
+
+    private final RestTemplate cupRestTemplate;
+    private final MetricManager metricManager;
+
+    /**
+     * Sets the number of listener threads of every queue a pod consumes.
+     *
+     * @param podIp   IP of the pod
+     * @param port    HTTP port of the pod
+     * @param threads number of listener threads per queue
+     */
+    public void setConcurrency(final String podIp, final int port, final int threads) {
+        final URI uri = UriComponentsBuilder.newInstance()
+                                            .scheme("http")
+                                            .host(podIp)
+                                            .port(port)
+                                            .path("/consumers/concurrency")
+                                            .queryParam("threads", threads)
+                                            .build()
+                                            .toUri();
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            cupRestTemplate.put(uri, null);
+            success = true;
+        } finally {
+            metricManager.recordApiCallDuration(API, SET_CONCURRENCY, success, System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.schoeniu.maha.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * ElasticMQ statistics Api, served on the rest-stats port of ElasticMQ
+ */
+@RequiredArgsConstructor
+@Service
+public class ElasticMqStatsApi {
+
+    @Value("${elasticmq.stats.url}")
+    private String url;
+
+    private final RestTemplate elasticMqRestTemplate;
+
+    /**
+     * Gets the approximate number of messages of all queues in one request.
+     *
+     * @return map with queue names as key and their number of messages as value
+     * @throws IllegalStateException if ElasticMQ did not return statistics
+     */
+    public Map<String, QueueMetrics> getQueueMetrics() {
+        final JsonNode response = elasticMqRestTemplate.getForObject(url + "/statistics/queues", JsonNode.class);
+        if (response == null || !response.isArray()) {
+            throw new IllegalStateException("ElasticMQ returned no queue statistics: " + response);
+        }
+        final Map<String, QueueMetrics> result = new HashMap<>();
+        for (JsonNode queue : response) {
+            final JsonNode statistics = queue.path("statistics");
+            result.put(queue.path("name")
+                            .asText(),
+                       new QueueMetrics(statistics.path("approximateNumberOfVisibleMessages")
+                                                  .asInt(),
+                                        statistics.path("approximateNumberOfInvisibleMessages")
+                                                  .asInt(),
+                                        statistics.path("approximateNumberOfMessagesDelayed")
+                                                  .asInt()));
+        }
+        return result;
+    }
+
+}
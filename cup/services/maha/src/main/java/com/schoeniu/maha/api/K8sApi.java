@@ -1,18 +1,50 @@
 package com.schoeniu.maha.api;
 
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.service.MeshService;
+import com.schoeniu.maha.topology.Mesh;
+
 import io.kubernetes.client.custom.V1Patch;
+import io.kubernetes.client.informer.ResourceEventHandler;
+import io.kubernetes.client.informer.SharedIndexInformer;
+import io.kubernetes.client.informer.SharedInformerFactory;
+import io.kubernetes.client.informer.cache.Lister;
+import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.ApiException;
 import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.kubernetes.client.openapi.apis.CoordinationV1Api;
+import io.kubernetes.client.openapi.apis.CoreV1Api;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
 import io.kubernetes.client.openapi.models.V1Deployment;
 import io.kubernetes.client.openapi.models.V1DeploymentList;
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import io.kubernetes.client.openapi.models.V1OwnerReference;
+import io.kubernetes.client.openapi.models.V1Pod;
+import io.kubernetes.client.openapi.models.V1PodList;
+import io.kubernetes.client.openapi.models.V1Scale;
 import io.kubernetes.client.util.PatchUtils;
+import io.kubernetes.client.util.generic.GenericKubernetesApi;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,79 +59,471 @@ public class K8sApi {
     private final static String DEPLOYMENT_SCALE_PATCH =
             "[{\"op\":\"replace\",\"path\":\"/spec/replicas\",\"value\":%d}]";
 
+    private static final long INITIAL_SYNC_TIMEOUT_SECONDS = 30;
+    private static final int MAX_SCALE_ATTEMPTS = 3;
+    private static final long SCALE_RETRY_BACKOFF_MILLIS = 100;
+    private static final String API = "kubernetes";
+
     private final AppsV1Api appsV1Api;
+    private final CoordinationV1Api coordinationV1Api;
+    private final CoreV1Api coreV1Api;
+    private final List<PodStartupListener> podStartupListeners;
+    private final MeshService meshService;
+    private final MetricManager metricManager;
+    private final CircuitBreakerRegistry circuitBreakers;
 
-    @Value("${kubernetes.config.namespace}")
-    private String namespace;
+    @Value("${kubernetes.config.resyncSeconds:30}")
+    private long resyncSeconds;
+
+    private final Map<String, SharedInformerFactory> informerFactories = new ConcurrentHashMap<>();
+    private final Map<String, Lister<V1Deployment>> deploymentListers = new ConcurrentHashMap<>();
+    private final Map<String, Lister<V1Pod>> podListers = new ConcurrentHashMap<>();
+    private final ExecutorService scaleExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory(
+            "scale-"));
+    private final Map<String, Integer> pendingScales = new ConcurrentHashMap<>();
+    private final Set<String> scalesInFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> sentScales = new ConcurrentHashMap<>();
 
     /**
-     * Scales given deployment to given number of replicas
+     * Scales given deployment to given number of replicas through its scale subresource.
+     * The request is sent asynchronously, so several deployments are scaled concurrently. It is skipped if the
+     * deployment already has the number of replicas. If a deployment is scaled again while a request for it is
+     * still running or retried, only the latest number of replicas is sent afterwards.
      *
+     * @param namespace  namespace of the deployment
      * @param deployment deployment to scale
      * @param replicas   number of replicas to scale to
      */
-    public void scaleDeployment(final String deployment, final int replicas) {
+    public void scaleDeployment(final String namespace, final String deployment, final int replicas) {
+        final String key = namespace + "/" + deployment;
+        // the cache may not contain a scaling which was just sent yet, so it is only trusted if it matches as well
+        if (!scalesInFlight.contains(key) && sentScales.getOrDefault(key, replicas) == replicas
+            && Objects.equals(getCachedReplicas(namespace, deployment), replicas)) {
+            log.debug("{} in {} already has {} replicas, skipping scaling.", deployment, namespace, replicas);
+            return;
+        }
+        pendingScales.put(key, replicas);
+        if (scalesInFlight.add(key)) {
+            scaleExecutor.execute(() -> applyPendingScales(namespace, deployment, key));
+        }
+    }
+
+    /**
+     * Sends the pending number of replicas of a deployment until none is pending anymore.
+     * Failed requests are retried with the latest pending number of replicas.
+     */
+    private void applyPendingScales(final String namespace, final String deployment, final String key) {
         try {
-            PatchUtils.patch(V1Deployment.class,
-                             () -> appsV1Api.patchNamespacedDeploymentCall(deployment,
-                                                                           namespace,
-                                                                           new V1Patch(String.format(
-                                                                                   DEPLOYMENT_SCALE_PATCH,
-                                                                                   replicas)),
-                                                                           null,
-                                                                           null,
-                                                                           null,
-                                                                           null,
-                                                                           null,
-                                                                           null),
-                             V1Patch.PATCH_FORMAT_JSON_PATCH,
-                             appsV1Api.getApiClient());
-            log.info("Scaled {} to {} replicas.", deployment, replicas);
-        } catch (ApiException e) {
-            log.error(e.toString());
-            log.error(e.getMessage());
-            log.error(e.getResponseBody());
-            e.printStackTrace();
+            int attempt = 0;
+            Integer replicas;
+            while ((replicas = pendingScales.remove(key)) != null) {
+                try {
+                    patchScale(namespace, deployment, replicas);
+                    sentScales.put(key, replicas);
+                    log.info("Scaled {} in {} to {} replicas.", deployment, namespace, replicas);
+                    attempt = 0;
+                } catch (ApiException e) {
+                    log.error("Scaling {} in {} to {} replicas failed in attempt {}: {} {}",
+                              deployment,
+                              namespace,
+                              replicas,
+                              attempt + 1,
+                              e.getCode(),
+                              e.getResponseBody());
+                    if (++attempt < MAX_SCALE_ATTEMPTS) {
+                        // a newer target replaces the failed one
+                        pendingScales.putIfAbsent(key, replicas);
+                        // jittered, so retries of deployments which failed together are spread out
+                        final long backoff = SCALE_RETRY_BACKOFF_MILLIS * attempt;
+                        Thread.sleep(backoff / 2 + ThreadLocalRandom.current()
+                                                                    .nextLong(backoff / 2 + 1));
+                    } else {
+                        attempt = 0;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        } finally {
+            scalesInFlight.remove(key);
+            // a target put after the loop ended but before the key was removed would not be sent otherwise
+            if (pendingScales.containsKey(key) && scalesInFlight.add(key)) {
+                scaleExecutor.execute(() -> applyPendingScales(namespace, deployment, key));
+            }
         }
     }
 
+    private void patchScale(final String namespace, final String deployment, final int replicas)
+            throws ApiException {
+        final V1Patch patch = new V1Patch(String.format(DEPLOYMENT_SCALE_PATCH, replicas));
+        timed("patch_deployment_scale",
+              () -> PatchUtils.patch(V1Scale.class,
+                                     () -> appsV1Api.patchNamespacedDeploymentScaleCall(deployment,
+                                                                                        namespace,
+                                                                                        patch,
+                                                                                        null,
+                                                                                        null,
+                                                                                        null,
+                                                                                        null,
+                                                                                        null,
+                                                                                        null),
+                                     V1Patch.PATCH_FORMAT_JSON_PATCH,
+                                     appsV1Api.getApiClient()));
+    }
+
     /**
-     * Gets map of the number of pods every deployment in the cup namespace currently has.
+     * Gets the number of replicas of a deployment from the informer cache.
      *
+     * @param namespace  namespace of the deployment
+     * @param deployment name of the deployment
+     * @return number of replicas, null if the deployment is not cached or has no number of replicas
+     */
+    Integer getCachedReplicas(final String namespace, final String deployment) {
+        final V1Deployment cached = getDeploymentLister(namespace).get(deployment);
+        return cached == null || cached.getSpec() == null ? null : cached.getSpec()
+                                                                         .getReplicas();
+    }
+
+    /**
+     * Starts the informers for every namespace a mesh is scaled in.
+     */
+    @PostConstruct
+    public void startInformers() {
+        final Set<String> namespaces = new TreeSet<>();
+        meshService.getMeshes()
+                   .stream()
+                   .map(Mesh::getNamespace)
+                   .forEach(namespaces::add);
+        namespaces.forEach(this::getDeploymentLister);
+    }
+
+    /**
+     * Gets the lister of the deployment cache of a namespace, starting its informers on first use.
+     */
+    private Lister<V1Deployment> getDeploymentLister(final String namespace) {
+        return deploymentListers.computeIfAbsent(namespace, this::startInformer);
+    }
+
+    /**
+     * Starts the informer which keeps an in-memory cache of all deployments in a namespace up to date
+     * by watching the API server. Waits until the initial list is synced, so the first schedule iteration already
+     * reads a filled cache.
+     *
+     * @param namespace namespace to watch
+     * @return lister of the deployment cache
+     */
+    private Lister<V1Deployment> startInformer(final String namespace) {
+        final ApiClient apiClient = appsV1Api.getApiClient();
+        // watches are long-running requests, which must not be aborted by the read timeout of the default client
+        final ApiClient informerClient = new ApiClient().setHttpClient(apiClient.getHttpClient()
+                                                                                .newBuilder()
+                                                                                .readTimeout(0, TimeUnit.SECONDS)
+                                                                                .build())
+                                                        .setBasePath(apiClient.getBasePath());
+
+        final SharedInformerFactory informerFactory = new SharedInformerFactory(informerClient);
+        informerFactories.put(namespace, informerFactory);
+        final SharedIndexInformer<V1Deployment> deploymentInformer =
+                informerFactory.sharedIndexInformerFor(new GenericKubernetesApi<>(V1Deployment.class,
+                                                                                  V1DeploymentList.class,
+                                                                                  "apps",
+                                                                                  "v1",
+                                                                                  "deployments",
+                                                                                  informerClient),
+                                                       V1Deployment.class,
+                                                       TimeUnit.SECONDS.toMillis(resyncSeconds),
+                                                       namespace);
+        final Lister<V1Deployment> deploymentLister = new Lister<>(deploymentInformer.getIndexer(), namespace);
+        final SharedIndexInformer<V1Pod> podInformer =
+                informerFactory.sharedIndexInformerFor(new GenericKubernetesApi<>(V1Pod.class,
+                                                                                  V1PodList.class,
+                                                                                  "",
+                                                                                  "v1",
+                                                                                  "pods",
+                                                                                  informerClient),
+                                                       V1Pod.class,
+                                                       TimeUnit.SECONDS.toMillis(resyncSeconds),
+                                                       namespace);
+        podInformer.addEventHandler(new PodStartupHandler(namespace));
+        podListers.put(namespace, new Lister<>(podInformer.getIndexer(), namespace));
+        informerFactory.startAllRegisteredInformers();
+
+        final long syncDeadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(INITIAL_SYNC_TIMEOUT_SECONDS);
+        while (!deploymentInformer.hasSynced() && System.currentTimeMillis() < syncDeadline) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+                break;
+            }
+        }
+        log.info("Deployment informer for namespace {} started, synced: {}.", namespace, deploymentInformer.hasSynced());
+        return deploymentLister;
+    }
+
+    /**
+     * Stops the informers and the scaling threads on shutdown.
+     */
+    @PreDestroy
+    public void stopInformers() {
+        informerFactories.values()
+                         .forEach(SharedInformerFactory::stopAllRegisteredInformers);
+        scaleExecutor.shutdown();
+    }
+
+    /**
+     * Gets map of the number of pods every deployment in a namespace currently has.
+     * Reads from the informer cache and does not call the API server, so while the API server is unavailable the
+     * last known number of pods is returned. Deployments without a number of replicas are left out.
+     *
+     * @param namespace namespace of the deployments
      * @return map with deployment name as key and number of pods as value.
      */
-    public Map<String, Integer> getReplicasPerDeployment() {
-        V1DeploymentList deploymentList = null;
+    public Map<String, Integer> getReplicasPerDeployment(final String namespace) {
+        Map<String, Integer> result = new HashMap<>();
+        getDeploymentLister(namespace).list()
+                        .forEach(d -> {
+                            if (d.getMetadata() == null || d.getSpec() == null || d.getSpec()
+                                                                                   .getReplicas() == null) {
+                                return;
+                            }
+                            String name = d.getMetadata()
+                                           .getName();
+                            assert !result.containsKey(name);
+                            result.put(name,
+                                       d.getSpec()
+                                        .getReplicas());
+                        });
+        return result;
+    }
+
+    /**
+     * Gets the IPs of all ready pods of a deployment. Reads from the informer cache and does not call the API server.
+     *
+     * @param namespace  namespace of the deployment
+     * @param deployment deployment owning the pods
+     * @return map with pod name as key and pod IP as value
+     */
+    public Map<String, String> getReadyPodIps(final String namespace, final String deployment) {
+        getDeploymentLister(namespace);
+        final Map<String, String> result = new HashMap<>();
+        podListers.get(namespace)
+                  .list()
+                  .stream()
+                  .filter(pod -> pod.getMetadata() != null && deployment.equals(getDeploymentName(pod.getMetadata())))
+                  .filter(pod -> pod.getStatus() != null && pod.getStatus()
+                                                               .getPodIP() != null && isReady(pod))
+                  .forEach(pod -> result.put(pod.getMetadata()
+                                                .getName(),
+                                             pod.getStatus()
+                                                .getPodIP()));
+        return result;
+    }
+
+    private static boolean isReady(final V1Pod pod) {
+        return pod.getStatus()
+                  .getConditions() != null && pod.getStatus()
+                                                 .getConditions()
+                                                 .stream()
+                                                 .anyMatch(condition -> "Ready".equals(condition.getType())
+                                                                        && "True".equals(condition.getStatus()));
+    }
+
+    /**
+     * Derives the deployment name of a pod from its owning replica set, which is named after the deployment
+     * followed by the pod template hash.
+     */
+    private static String getDeploymentName(final V1ObjectMeta metadata) {
+        final String templateHash = metadata.getLabels() == null
+                                    ? null
+                                    : metadata.getLabels()
+                                              .get("pod-template-hash");
+        if (templateHash == null || metadata.getOwnerReferences() == null) {
+            return null;
+        }
+        return metadata.getOwnerReferences()
+                       .stream()
+                       .filter(owner -> "ReplicaSet".equals(owner.getKind()))
+                       .map(V1OwnerReference::getName)
+                       .filter(name -> name.endsWith("-" + templateHash))
+                       .map(name -> name.substring(0, name.length() - templateHash.length() - 1))
+                       .findFirst()
+                       .orElse(null);
+    }
+
+    /**
+     * Reads a lease.
+     *
+     * @param namespace namespace of the lease
+     * @param name      name of the lease
+     * @return lease, empty if it does not exist
+     * @throws ApiException if the lease could not be read
+     */
+    public Optional<V1Lease> readLease(final String namespace, final String name) throws ApiException {
         try {
-            deploymentList = appsV1Api.listNamespacedDeployment("cup",
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                null,
-                                                                10,
-                                                                false);
+            return Optional.of(timed("read_lease",
+                                     () -> coordinationV1Api.readNamespacedLease(name, namespace, null)));
         } catch (ApiException e) {
-            log.error(e.toString());
-            log.error(e.getMessage());
-            log.error(e.getResponseBody());
-            e.printStackTrace();
+            if (e.getCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a lease.
+     *
+     * @param namespace namespace of the lease
+     * @param lease     lease to create
+     * @throws ApiException if the lease could not be created, e.g. because it was created concurrently
+     */
+    public void createLease(final String namespace, final V1Lease lease) throws ApiException {
+        timed("create_lease",
+              () -> coordinationV1Api.createNamespacedLease(namespace, lease, null, null, null, null));
+    }
+
+    /**
+     * Replaces a lease. Fails if the lease was modified since it was read, as the resource version of the read
+     * lease is sent along.
+     *
+     * @param namespace namespace of the lease
+     * @param lease     lease to replace, as read before and modified
+     * @throws ApiException if the lease could not be replaced, e.g. because it was modified concurrently
+     */
+    public void replaceLease(final String namespace, final V1Lease lease) throws ApiException {
+        final String name = Objects.requireNonNull(lease.getMetadata())
+                                   .getName();
+        timed("replace_lease",
+              () -> coordinationV1Api.replaceNamespacedLease(name, namespace, lease, null, null, null, null));
+    }
+
+    /**
+     * Reads a config map.
+     *
+     * @param namespace namespace of the config map
+     * @param name      name of the config map
+     * @return config map, empty if it does not exist
+     * @throws ApiException if the config map could not be read
+     */
+    public Optional<V1ConfigMap> readConfigMap(final String namespace, final String name) throws ApiException {
+        try {
+            return Optional.of(timed("read_config_map",
+                                     () -> coreV1Api.readNamespacedConfigMap(name, namespace, null)));
+        } catch (ApiException e) {
+            if (e.getCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Calls the API server through its circuit breaker and records the duration of the call. Only calls the API
+     * server could not answer, like connection failures, timeouts and server errors, count as failures of the
+     * breaker, while e.g. conflicts of concurrent lease updates do not.
+     *
+     * @param operation name of the called operation
+     * @param call      call to execute
+     * @return result of the call
+     * @throws ApiException if the call failed or the circuit breaker is open
+     */
+    private <T> T timed(final String operation, final ApiCall<T> call) throws ApiException {
+        if (!circuitBreakers.tryAcquire(API)) {
+            throw new ApiException(new CircuitBreakerOpenException(API).getMessage());
+        }
+        final long start = System.nanoTime();
+        boolean success = false;
+        boolean available = false;
+        try {
+            final T result = call.execute();
+            success = true;
+            available = true;
+            return result;
+        } catch (ApiException e) {
+            available = e.getCode() > 0 && e.getCode() < 500 && e.getCode() != 429;
+            throw e;
+        } finally {
+            circuitBreakers.record(API, available);
+            metricManager.recordApiCallDuration(API, operation, success, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Call to the API server.
+     */
+    @FunctionalInterface
+    private interface ApiCall<T> {
+
+        T execute() throws ApiException;
+    }
+
+    /**
+     * Informer event handler which measures the startup time of every pod from its creation until its first
+     * ready transition and notifies the pod startup listeners for the deployment owning the pod.
+     * Only pods created after the informer started are measured: the pods replayed by the initial list may have
+     * been ready for a long time or have changed their readiness since, so their current ready transition says
+     * nothing about their startup.
+     */
+    private class PodStartupHandler implements ResourceEventHandler<V1Pod> {
+
+        private final String namespace;
+        private final long startedMillis = System.currentTimeMillis();
+        private final Set<String> recordedPods = ConcurrentHashMap.newKeySet();
+
+        PodStartupHandler(final String namespace) {
+            this.namespace = namespace;
+        }
+
+        @Override
+        public void onAdd(final V1Pod pod) {
+            recordIfReady(pod);
+        }
+
+        @Override
+        public void onUpdate(final V1Pod oldPod, final V1Pod newPod) {
+            recordIfReady(newPod);
+        }
+
+        @Override
+        public void onDelete(final V1Pod pod, final boolean deletedFinalStateUnknown) {
+            if (pod.getMetadata() != null) {
+                recordedPods.remove(pod.getMetadata()
+                                       .getUid());
+            }
+        }
+
+        private void recordIfReady(final V1Pod pod) {
+            final V1ObjectMeta metadata = pod.getMetadata();
+            if (metadata == null || metadata.getCreationTimestamp() == null || pod.getStatus() == null
+                || pod.getStatus()
+                      .getConditions() == null || recordedPods.contains(metadata.getUid())
+                || metadata.getCreationTimestamp()
+                           .toInstant()
+                           .toEpochMilli() < startedMillis) {
+                return;
+            }
+            final String deployment = getDeploymentName(metadata);
+            if (deployment == null) {
+                return;
+            }
+            pod.getStatus()
+               .getConditions()
+               .stream()
+               .filter(condition -> "Ready".equals(condition.getType()) && "True".equals(condition.getStatus())
+                                    && condition.getLastTransitionTime() != null)
+               .findFirst()
+               .ifPresent(ready -> {
+                   recordedPods.add(metadata.getUid());
+                   final Duration startup = Duration.between(metadata.getCreationTimestamp(),
+                                                             ready.getLastTransitionTime());
+                   podStartupListeners.forEach(listener -> listener.onPodStarted(namespace,
+                                                                                 deployment,
+                                                                                 startup.toMillis() / 1000.0));
+               });
         }
-        Map<String, Integer> result = new HashMap<>();
-        assert deploymentList != null;
-        deploymentList.getItems()
-                      .forEach(d -> {
-                          String name = Objects.requireNonNull(d.getMetadata())
-                                               .getName();
-                          assert !result.containsKey(name);
-                          result.put(name,
-                                     Objects.requireNonNull(d.getSpec())
-                                            .getReplicas());
-                      });
-        return result;
     }
 
 }
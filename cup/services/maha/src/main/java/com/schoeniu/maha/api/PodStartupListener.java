@@ -0,0 +1,18 @@
+package com.schoeniu.maha.api;
+
+/**
+ * Listener notified by the {@link K8sApi} whenever a pod of a deployment became ready for the first time.
+ */
+@FunctionalInterface
+public interface PodStartupListener {
+
+    /**
+     * Called with the time a pod took from its creation until it was ready for the first time.
+     *
+     * @param namespace      namespace of the deployment
+     * @param deployment     deployment the pod belongs to
+     * @param startupSeconds seconds from creation to readiness
+     */
+    void onPodStarted(String namespace, String deployment, double startupSeconds);
+
+}
@@ -0,0 +1,87 @@
+package com.schoeniu.maha.api;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Prometheus Api
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class PrometheusApi {
+
+    @Value("${prometheus.url}")
+    private String url;
+
+    private final RestTemplate prometheusRestTemplate;
+
+    /**
+     * Executes an instant PromQL query.
+     *
+     * @param query PromQL query which results in an instant vector
+     * @return list of samples of the resulting vector, empty if the query failed
+     */
+    public List<Sample> query(final String query) {
+        final URI uri = UriComponentsBuilder.fromHttpUrl(url)
+                                            .path("/api/v1/query")
+                                            .queryParam("query", "{query}")
+                                            .encode()
+                                            .buildAndExpand(query)
+                                            .toUri();
+        final List<Sample> result = new ArrayList<>();
+        try {
+            final JsonNode response = prometheusRestTemplate.getForObject(uri, JsonNode.class);
+            if (response == null || !"success".equals(response.path("status")
+                                                               .asText())) {
+                log.warn("Prometheus query {} failed: {}", query, response);
+                return result;
+            }
+            for (JsonNode series : response.path("data")
+                                           .path("result")) {
+                final Map<String, String> labels = new HashMap<>();
+                series.path("metric")
+                      .fields()
+                      .forEachRemaining(label -> labels.put(label.getKey(),
+                                                            label.getValue()
+                                                                 .asText()));
+                final double value = series.path("value")
+                                           .path(1)
+                                           .asDouble(Double.NaN);
+                if (Double.isFinite(value)) {
+                    result.add(new Sample(labels, value));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Prometheus query {} failed: {}", query, e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Single sample of an instant vector.
+     *
+     * @param labels labels of the series
+     * @param value  value of the series
+     */
+    public record Sample(Map<String, String> labels, double value) {
+
+        public String label(final String name) {
+            return labels.get(name);
+        }
+    }
+
+}
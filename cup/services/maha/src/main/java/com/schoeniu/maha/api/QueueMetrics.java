@@ -0,0 +1,12 @@
+package com.schoeniu.maha.api;
+
+/**
+ * Approximate number of messages of a queue by their state.
+ *
+ * @param visible  messages available for consumption
+ * @param inFlight messages received by a consumer but not deleted yet
+ * @param delayed  messages not visible yet because of a delay
+ */
+public record QueueMetrics(int visible, int inFlight, int delayed) {
+
+}
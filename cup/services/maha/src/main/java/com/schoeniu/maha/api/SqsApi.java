@@ -1,10 +1,16 @@
 package com.schoeniu.maha.api;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.schoeniu.maha.observability.MetricManager;
+
 import lombok.RequiredArgsConstructor;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
 import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
 import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
@@ -16,25 +22,79 @@ import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
 @Service
 public class SqsApi {
 
+    private static final String API = "sqs";
+    private static final String GET_QUEUE_ATTRIBUTES = "get_queue_attributes";
+    private static final QueueAttributeName[] QUEUE_METRICS_ATTRIBUTES = {
+            QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES,
+            QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE,
+            QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED };
+
     @Value("${aws.sqs.client.account}")
     private String account;
 
-    private final SqsClient sqsClient;
+    private final SqsAsyncClient sqsAsyncClient;
+    private final MetricManager metricManager;
+    private final CircuitBreakerRegistry circuitBreakers;
 
     /**
-     * Gets the approximate current number of messages in a queue.
+     * Gets the approximate current number of visible, in-flight and delayed messages in a queue without blocking
+     * the calling thread.
      *
      * @param queueName name of queue to get the number of messages from
-     * @return number of messages
+     * @return future completing with the number of messages, failing immediately if SQS failed repeatedly and is
+     * not called
+     */
+    public CompletableFuture<QueueMetrics> getQueueMetricsAsync(final String queueName) {
+        if (!circuitBreakers.tryAcquire(API)) {
+            return CompletableFuture.failedFuture(new CircuitBreakerOpenException(API));
+        }
+        final long start = System.nanoTime();
+        return sqsAsyncClient.getQueueAttributes(createRequest(queueName, QUEUE_METRICS_ATTRIBUTES))
+                             .whenComplete((response, e) -> {
+                                 circuitBreakers.record(API, e == null || isAvailable(e));
+                                 metricManager.recordApiCallDuration(API,
+                                                                     GET_QUEUE_ATTRIBUTES,
+                                                                     e == null,
+                                                                     System.nanoTime() - start);
+                             })
+                             .thenApply(SqsApi::parseQueueMetrics);
+    }
+
+    /**
+     * Checks whether a failed call was still answered by SQS, e.g. with a client error for a missing queue.
+     * Only timeouts, connection failures, server errors and throttling count against the circuit breaker, so a single
+     * misconfigured queue does not stop the polling of all queues.
      */
-    public int getNumberOfMessages(final String queueName) {
-        final GetQueueAttributesRequest request = GetQueueAttributesRequest.builder()
-                                                                           .queueUrl(account + queueName)
-                                                                           .attributeNames(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)
-                                                                           .build();
-        final GetQueueAttributesResponse response = sqsClient.getQueueAttributes(request);
+    private static boolean isAvailable(final Throwable e) {
+        final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof SdkServiceException serviceException && serviceException.statusCode() > 0
+               && serviceException.statusCode() < 500 && !serviceException.isThrottlingException();
+    }
+
+    private GetQueueAttributesRequest createRequest(final String queueName,
+                                                    final QueueAttributeName... attributeNames) {
+        return GetQueueAttributesRequest.builder()
+                                        .queueUrl(account + queueName)
+                                        .attributeNames(attributeNames)
+                                        .build();
+    }
+
+    private static int parseNumberOfMessages(final GetQueueAttributesResponse response) {
         return Integer.parseInt(response.attributes()
                                         .get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES));
     }
 
+    private static QueueMetrics parseQueueMetrics(final GetQueueAttributesResponse response) {
+        return new QueueMetrics(parseNumberOfMessages(response),
+                                parseAttribute(response, QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE),
+                                parseAttribute(response, QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED));
+    }
+
+    private static int parseAttribute(final GetQueueAttributesResponse response,
+                                      final QueueAttributeName attributeName) {
+        final String value = response.attributes()
+                                     .get(attributeName);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
 }
@@ -0,0 +1,19 @@
+package com.schoeniu.maha.config;
+
+import java.time.Clock;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Clock configuration, so the time used by the scaling decisions can be replaced, e.g. by a simulated clock.
+ */
+@Configuration
+public class ClockConfig {
+
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.schoeniu.maha.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * ElasticMQ statistics API config
+ */
+@Configuration
+public class ElasticMqConfig {
+
+    @Value("${elasticmq.stats.timeoutMillis:500}")
+    private long timeoutMillis;
+
+    @Bean
+    public RestTemplate elasticMqRestTemplate(final RestTemplateBuilder builder) {
+        return builder.setConnectTimeout(Duration.ofMillis(timeoutMillis))
+                      .setReadTimeout(Duration.ofMillis(timeoutMillis))
+                      .build();
+    }
+
+}
@@ -2,11 +2,13 @@ package com.schoeniu.maha.config;
 
 import java.io.IOException;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import io.kubernetes.client.openapi.ApiClient;
 import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.kubernetes.client.openapi.apis.CoordinationV1Api;
 import io.kubernetes.client.openapi.apis.CoreV1Api;
 import io.kubernetes.client.util.Config;
 
@@ -16,9 +18,19 @@ import io.kubernetes.client.util.Config;
 @Configuration
 public class K8sConfig {
 
+    @Value("${kubernetes.config.timeoutMillis:2000}")
+    private int timeoutMillis;
+
+    /**
+     * Client of the API server, whose requests time out so a hung call cannot block its caller. The informers
+     * derive their own client without read timeout for their long-running watches.
+     */
     @Bean
     ApiClient apiClient() throws IOException {
-        return Config.fromCluster();
+        return Config.fromCluster()
+                     .setConnectTimeout(timeoutMillis)
+                     .setReadTimeout(timeoutMillis)
+                     .setWriteTimeout(timeoutMillis);
     }
 
     @Bean
@@ -31,4 +43,9 @@ public class K8sConfig {
         return new AppsV1Api(apiClient);
     }
 
+    @Bean
+    public CoordinationV1Api coordinationV1Api(final ApiClient apiClient) {
+        return new CoordinationV1Api(apiClient);
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.schoeniu.maha.config;
 
 import java.net.URI;
+import java.time.Duration;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -8,8 +9,12 @@ import org.springframework.context.annotation.Configuration;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.FullJitterBackoffStrategy;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 
 /**
  * SQS config
@@ -29,14 +34,58 @@ public class SQSConfig {
     @Value("${aws.sqs.client.endpoint}")
     private String endpoint;
 
+    @Value("${aws.sqs.client.maxConcurrency:200}")
+    private int maxConcurrency;
+
+    @Value("${aws.sqs.client.timeoutMillis:700}")
+    private long timeoutMillis;
+
+    @Value("${aws.sqs.client.attemptTimeoutMillis:250}")
+    private long attemptTimeoutMillis;
+
+    @Value("${aws.sqs.client.maxRetries:2}")
+    private int maxRetries;
+
+    @Value("${aws.sqs.client.retryBaseDelayMillis:25}")
+    private long retryBaseDelayMillis;
+
+    /**
+     * Async client used for querying all queues in parallel.
+     * The max concurrency should be at least the number of queues, so no request waits for a free connection.
+     */
     @Bean
-    public SqsClient sqsClient() {
-        return SqsClient.builder()
-                        .region(Region.of(region))
-                        .endpointOverride(URI.create(endpoint))
-                        .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey,
-                                                                                                         secretKey)))
-                        .build();
+    public SqsAsyncClient sqsAsyncClient() {
+        return SqsAsyncClient.builder()
+                             .region(Region.of(region))
+                             .endpointOverride(URI.create(endpoint))
+                             .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                                     accessKey,
+                                     secretKey)))
+                             .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                                                                       .maxConcurrency(maxConcurrency))
+                             .overrideConfiguration(overrideConfiguration())
+                             .build();
+    }
+
+    /**
+     * Bounds every call to SQS by a timeout per attempt and in total, so a hung request cannot hold up a schedule
+     * iteration beyond its poll deadline. Failed attempts are retried a few times with full jitter, so the retries of
+     * the queues polled in parallel do not hit SQS at the same time.
+     */
+    private ClientOverrideConfiguration overrideConfiguration() {
+        final FullJitterBackoffStrategy backoffStrategy =
+                FullJitterBackoffStrategy.builder()
+                                         .baseDelay(Duration.ofMillis(retryBaseDelayMillis))
+                                         .maxBackoffTime(Duration.ofMillis(attemptTimeoutMillis))
+                                         .build();
+        return ClientOverrideConfiguration.builder()
+                                          .apiCallTimeout(Duration.ofMillis(timeoutMillis))
+                                          .apiCallAttemptTimeout(Duration.ofMillis(attemptTimeoutMillis))
+                                          .retryPolicy(RetryPolicy.builder()
+                                                                  .numRetries(maxRetries)
+                                                                  .backoffStrategy(backoffStrategy)
+                                                                  .build())
+                                          .build();
     }
 
 }
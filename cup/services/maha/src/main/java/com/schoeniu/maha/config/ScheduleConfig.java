@@ -1,13 +1,32 @@
 package com.schoeniu.maha.config;
 
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import com.schoeniu.maha.service.AdaptiveTickTrigger;
+import com.schoeniu.maha.service.ScalingSchedule;
+
+import lombok.RequiredArgsConstructor;
 
 /**
- * Enable scheduling config.
+ * Enable scheduling config and register the scaling schedule with its adaptive trigger.
+ * Can be disabled with scheduling.enabled=false, e.g. for tests which trigger the schedule manually.
  */
 @Configuration
 @EnableScheduling
-public class ScheduleConfig {
+@RequiredArgsConstructor
+@ConditionalOnProperty(value = "scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class ScheduleConfig implements SchedulingConfigurer {
+
+    private final ScalingSchedule scalingSchedule;
+    private final AdaptiveTickTrigger adaptiveTickTrigger;
+
+    @Override
+    public void configureTasks(final ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(scalingSchedule::schedule, adaptiveTickTrigger);
+    }
 
 }
@@ -1,5 +1,8 @@
 package com.schoeniu.maha.config.properties;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -18,6 +21,19 @@ public class ScalingConfigProperties {
 
     private StrategyConfig strategy;
     private Map<String, ConsumerServiceConfig> queuesConsumedFrom;
+    private Map<String, MeshConfig> meshes = new LinkedHashMap<>();
+
+    /**
+     * Additional message mesh scaled by the same MAHA instance, with its own queues, strategy and namespace.
+     */
+    @Data
+    @NoArgsConstructor
+    public static class MeshConfig {
+
+        private String namespace;
+        private StrategyConfig strategy = new StrategyConfig();
+        private Map<String, ConsumerServiceConfig> queuesConsumedFrom;
+    }
 
     @Data
     @NoArgsConstructor
@@ -25,10 +41,129 @@ public class ScalingConfigProperties {
 
         private boolean exportMetrics;
         private boolean scalingEnabled;
+        private boolean shadowMode;
         private boolean followUpScalingEnabled;
         private float queueDecreasePerMinute;
         private int downScaleStabilizationSeconds;
         private int maxNumberOfPods;
+        private QueueMetricsSourceType queueMetricsSource = QueueMetricsSourceType.SQS;
+        private RateLearningConfig rateLearning = new RateLearningConfig();
+        private RatioLearningConfig ratioLearning = new RatioLearningConfig();
+        private ForecastConfig forecast = new ForecastConfig();
+        private PodStartupConfig podStartup = new PodStartupConfig();
+        private ScaleToZeroConfig scaleToZero = new ScaleToZeroConfig();
+        private LatencySloConfig latencySlo = new LatencySloConfig();
+        private DownscaleConfig downscale = new DownscaleConfig();
+        private PodBudgetConfig podBudget = new PodBudgetConfig();
+        private VerticalScalingConfig vertical = new VerticalScalingConfig();
+    }
+
+    /**
+     * Source the number of messages in the queues of a mesh are queried from.
+     */
+    public enum QueueMetricsSourceType {
+        /**
+         * One GetQueueAttributes request per queue.
+         */
+        SQS,
+        /**
+         * One request for all queues to the statistics endpoint of ElasticMQ.
+         */
+        ELASTICMQ_STATS,
+        /**
+         * One PromQL query per message state for all queues.
+         */
+        PROMETHEUS
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class RateLearningConfig {
+
+        private boolean enabled;
+        private float alpha = 0.2F;
+        private int minSamples = 10;
+        private float maxRelativeDeviation = 0.25F;
+        private float confidenceZ = 1.0F;
+        private int minBacklog = 20;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class RatioLearningConfig {
+
+        private boolean enabled;
+        private float alpha = 0.2F;
+        private int minSamples = 5;
+        private float minConsumptionRate = 1.0F;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ForecastConfig {
+
+        private boolean enabled;
+        private float alpha = 0.5F;
+        private float beta = 0.3F;
+        private int horizonSeconds = 30;
+        private int bufferSize = 300;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class PodStartupConfig {
+
+        private boolean enabled;
+        private float alpha = 0.3F;
+        private int defaultStartupSeconds = 30;
+        private int maxStartupSeconds = 600;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ScaleToZeroConfig {
+
+        private List<String> services = new ArrayList<>();
+        private long activationPollMillis = 250;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class LatencySloConfig {
+
+        private boolean enabled;
+        private float percentile = 0.95F;
+        private float maxCorrection = 4.0F;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class DownscaleConfig {
+
+        private boolean enabled;
+        private int recommendationWindowSeconds = 300;
+        private int periodSeconds = 60;
+        private int maxPodsPerPeriod;
+        private float maxPercentPerPeriod;
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class PodBudgetConfig {
+
+        private boolean enabled;
+        private float total;
+        private Map<String, Float> podCosts = new LinkedHashMap<>();
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class VerticalScalingConfig {
+
+        private boolean enabled;
+        private List<String> services = new ArrayList<>();
+        private int maxConcurrency = 4;
+        private int port = 8080;
     }
 
     @Data
@@ -37,6 +172,7 @@ public class ScalingConfigProperties {
 
         private String serviceName;
         private float consumptionRate;
+        private float targetWaitSeconds;
         private Map<String, ProducerQueueConfig> queuesProducedTo;
     }
 
@@ -1,8 +1,10 @@
 package com.schoeniu.maha.observability;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Value;
@@ -10,74 +12,478 @@ import org.springframework.stereotype.Component;
 
 import com.schoeniu.maha.util.MutableFloat;
 
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * MetricManager acting as interface for all micrometer/prometheus interactions.
  */
 @Slf4j
-@RequiredArgsConstructor
 @Component
 public class MetricManager {
 
     private static final String APPLICATION = "application:";
     private static final String MESSAGES_IN_QUEUE = APPLICATION + "number_of_messages_in_queue";
-
-    @Value("${management.metrics.tags.application}")
-    private String applicationTag;
+    private static final String MESSAGES_IN_FLIGHT = APPLICATION + "number_of_messages_in_flight";
+    private static final String MESSAGES_DELAYED = APPLICATION + "number_of_messages_delayed";
+    private static final String QUEUE_DEPTH_STALE = APPLICATION + "queue_depth_stale";
+    private static final String LEARNED_CONSUMPTION_RATE = APPLICATION + "learned_consumption_rate";
+    private static final String RELATIVE_PRODUCTION_RATE = APPLICATION + "relative_production_rate";
+    private static final String FORECAST_MESSAGES_IN_QUEUE = APPLICATION + "forecast_number_of_messages_in_queue";
+    private static final String FORECAST_ERROR = APPLICATION + "forecast_error";
+    private static final String FORECAST_MEAN_ABSOLUTE_ERROR = APPLICATION + "forecast_mean_absolute_error";
+    private static final String POD_STARTUP_SECONDS = APPLICATION + "pod_startup_seconds";
+    private static final String OBSERVED_WAIT_SECONDS = APPLICATION + "observed_wait_seconds";
+    private static final String SCALED_DOWN_PODS = APPLICATION + "scaled_down_pods";
+    private static final String COLD_STARTED_PODS = APPLICATION + "cold_started_pods";
+    private static final String COLD_STARTED_PODS_AFTER_DOWNSCALE = APPLICATION + "cold_started_pods_after_downscale";
+    private static final String ORIGIN_RATE = APPLICATION + "origin_rate";
+    private static final String FOLLOW_UP_RATE = APPLICATION + "follow_up_rate";
+    private static final String TOTAL_RATE = APPLICATION + "total_rate";
+    private static final String REQUIRED_PODS = APPLICATION + "required_pods";
+    private static final String CURRENT_PODS = APPLICATION + "current_pods";
+    private static final String TARGET_PODS = APPLICATION + "target_pods";
+    private static final String SHADOW_ACTUAL_PODS = APPLICATION + "shadow_actual_pods";
+    private static final String SHADOW_POD_DIFFERENCE = APPLICATION + "shadow_recommended_minus_actual_pods";
+    private static final String SUPPRESSED_DOWNSCALES = APPLICATION + "suppressed_downscales";
+    private static final String API_CALL_DURATION = APPLICATION + "api_call_duration";
+    private static final String POD_BUDGET_SERVED_FRACTION = APPLICATION + "pod_budget_served_fraction";
+    private static final String LEADER = APPLICATION + "leader";
+    private static final String CIRCUIT_BREAKER_STATE = APPLICATION + "circuit_breaker_state";
+    private static final String SCHEDULE_TICK_DURATION = APPLICATION + "schedule_tick_duration";
+    private static final String SCHEDULE_TICK_LAG = APPLICATION + "schedule_tick_lag";
 
     private final MeterRegistry meterRegistry;
+    private final String applicationTag;
+
+    private final Map<String, MutableFloat> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public MetricManager(final MeterRegistry meterRegistry,
+                         @Value("${management.metrics.tags.application}") final String applicationTag) {
+        this.meterRegistry = meterRegistry;
+        this.applicationTag = applicationTag;
+    }
+
+    /**
+     * Gets or creates the gauge metric of how many messages are in a queue.
+     * The returned gauge can be kept and updated without looking it up again.
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to get for
+     * @return gauge value holder
+     */
+    public MutableFloat getMessagesInQueueGauge(final String mesh, final String queueName) {
+        return getOrCreateGauge(MESSAGES_IN_QUEUE, 0, "mesh", mesh, "queue", queueName);
+    }
+
+    /**
+     * Creates or updates the gauge metric of how many messages of a queue were received but not deleted yet
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param value     number of in-flight messages
+     */
+    public void setMessagesInFlightGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(MESSAGES_IN_FLIGHT, mesh, queueName, value);
+    }
+
+    /**
+     * Creates or updates the gauge metric of how many messages of a queue are delayed
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param value     number of delayed messages
+     */
+    public void setMessagesDelayedGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(MESSAGES_DELAYED, mesh, queueName, value);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the rate of messages arriving at a queue from outside of the mesh or from
+     * its backlog, which has to be consumed per minute.
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue
+     * @return gauge value holder
+     */
+    public MutableFloat getOriginRateGauge(final String mesh, final String queueName) {
+        return getOrCreateGauge(ORIGIN_RATE, 0, "mesh", mesh, "queue", queueName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the rate per minute of messages expected at a queue as follow-up of the
+     * rates of its upstream queues.
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue
+     * @return gauge value holder
+     */
+    public MutableFloat getFollowUpRateGauge(final String mesh, final String queueName) {
+        return getOrCreateGauge(FOLLOW_UP_RATE, 0, "mesh", mesh, "queue", queueName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the total rate per minute a queue is scaled for.
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue
+     * @return gauge value holder
+     */
+    public MutableFloat getTotalRateGauge(final String mesh, final String queueName) {
+        return getOrCreateGauge(TOTAL_RATE, 0, "mesh", mesh, "queue", queueName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the number of pods a service requires for the total rates of its queues.
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @return gauge value holder
+     */
+    public MutableFloat getRequiredPodsGauge(final String mesh, final String serviceName) {
+        return getOrCreateGauge(REQUIRED_PODS, 0, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the number of pods a service currently has.
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @return gauge value holder
+     */
+    public MutableFloat getCurrentPodsGauge(final String mesh, final String serviceName) {
+        return getOrCreateGauge(CURRENT_PODS, 0, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the number of pods a service is scaled to.
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @return gauge value holder
+     */
+    public MutableFloat getTargetPodsGauge(final String mesh, final String serviceName) {
+        return getOrCreateGauge(TARGET_PODS, 0, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the number of pods a service has, as set by the autoscaler active while
+     * MAHA runs in shadow mode.
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @return gauge value holder
+     */
+    public MutableFloat getShadowActualPodsGauge(final String mesh, final String serviceName) {
+        return getOrCreateGauge(SHADOW_ACTUAL_PODS, 0, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Gets or creates the gauge metric of the number of pods MAHA recommends in shadow mode minus the number of pods
+     * set by the active autoscaler. Positive values mean MAHA would run more pods.
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @return gauge value holder
+     */
+    public MutableFloat getShadowPodDifferenceGauge(final String mesh, final String serviceName) {
+        return getOrCreateGauge(SHADOW_POD_DIFFERENCE, 0, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Creates or updates the gauge metric flagging whether the number of messages of a queue is stale,
+     * meaning it could not be queried in the last schedule iteration and the last known value is used instead.
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param stale     whether the queue depth is stale
+     */
+    public void setQueueDepthStaleGauge(final String mesh, final String queueName, final boolean stale) {
+        setQueueGauge(QUEUE_DEPTH_STALE, mesh, queueName, stale ? 1 : 0);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the learned consumption rate per pod of a service on a queue
+     *
+     * @param mesh        name of the mesh
+     * @param queueName   name of the queue consumed from
+     * @param serviceName name of the consuming service
+     * @param value       learned messages per minute per pod
+     */
+    public void setLearnedConsumptionRateGauge(final String mesh,
+                                               final String queueName,
+                                               final String serviceName,
+                                               final Number value) {
+        setGauge(LEARNED_CONSUMPTION_RATE, value, "mesh", mesh, "queue", queueName, "service", serviceName);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the relative production rate which is currently used for an edge
+     * between a consumed and a produced queue
+     *
+     * @param mesh              name of the mesh
+     * @param queueName         name of the queue consumed from
+     * @param producedQueueName name of the queue produced to
+     * @param value             relative production rate
+     */
+    public void setRelativeProductionRateGauge(final String mesh,
+                                               final String queueName,
+                                               final String producedQueueName,
+                                               final Number value) {
+        setGauge(RELATIVE_PRODUCTION_RATE,
+                 value,
+                 "mesh",
+                 mesh,
+                 "queue",
+                 queueName,
+                 "produced_queue",
+                 producedQueueName);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the forecast number of messages in a queue one horizon ahead
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param value     forecast number of messages
+     */
+    public void setForecastGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(FORECAST_MESSAGES_IN_QUEUE, mesh, queueName, value);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the error of the last evaluated forecast of a queue,
+     * positive values mean the forecast was too high
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param value     forecast minus actual number of messages
+     */
+    public void setForecastErrorGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(FORECAST_ERROR, mesh, queueName, value);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the smoothed mean absolute forecast error of a queue
+     *
+     * @param mesh      name of the mesh
+     * @param queueName name of the queue the metric to set for
+     * @param value     mean absolute error
+     */
+    public void setForecastMeanAbsoluteErrorGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(FORECAST_MEAN_ABSOLUTE_ERROR, mesh, queueName, value);
+    }
 
-    private final Map<String, MutableFloat> gauges = new HashMap<>();
+    /**
+     * Creates or updates the gauge metric of the estimated startup time of new pods of a service
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service the metric to set for
+     * @param value       estimated startup time in seconds
+     */
+    public void setPodStartupSecondsGauge(final String mesh, final String serviceName, final Number value) {
+        setGauge(POD_STARTUP_SECONDS, value, "mesh", mesh, "service", serviceName);
+    }
 
     /**
-     * Creates or updates the gauge metric of how many messages are in a queue
+     * Creates or updates the gauge metric of the wait time percentile observed by the consumers of a queue
      *
+     * @param mesh      name of the mesh
      * @param queueName name of the queue the metric to set for
-     * @param value     value to set the metric to
+     * @param value     observed wait time in seconds
+     */
+    public void setObservedWaitSecondsGauge(final String mesh, final String queueName, final Number value) {
+        setQueueGauge(OBSERVED_WAIT_SECONDS, mesh, queueName, value);
+    }
+
+    /**
+     * Creates or updates the gauge metric flagging whether this instance is the leader executing the scaling
+     *
+     * @param leader true if this instance is the leader
+     */
+    public void setLeaderGauge(final boolean leader) {
+        setGauge(LEADER, leader ? 1 : 0);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the state of the circuit breaker of an API
+     *
+     * @param api   name of the API
+     * @param state 0 if closed, 1 if half open and 2 if open
+     */
+    public void setCircuitBreakerStateGauge(final String api, final Number state) {
+        setGauge(CIRCUIT_BREAKER_STATE, state, "api", api);
+    }
+
+    /**
+     * Creates or updates the gauge metric of the fraction of the required rates of a mesh, which can be consumed by
+     * the pods allocated within its pod budget
+     *
+     * @param mesh  name of the mesh
+     * @param value served fraction between 0 and 1
+     */
+    public void setPodBudgetServedFractionGauge(final String mesh, final Number value) {
+        setGauge(POD_BUDGET_SERVED_FRACTION, value, "mesh", mesh);
+    }
+
+    /**
+     * Increments the counter metric of pods removed from a service by downscales
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @param pods        number of removed pods
+     */
+    public void incScaledDownPods(final String mesh, final String serviceName, final int pods) {
+        incCounter(SCALED_DOWN_PODS, pods, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Increments the counter metrics of pods added to a service by upscales, each of which has to cold start
+     *
+     * @param mesh             name of the mesh
+     * @param serviceName      name of the service
+     * @param pods             number of added pods
+     * @param afterDownscale   number of the added pods which replace pods removed shortly before
+     */
+    public void incColdStartedPods(final String mesh,
+                                   final String serviceName,
+                                   final int pods,
+                                   final int afterDownscale) {
+        incCounter(COLD_STARTED_PODS, pods, "mesh", mesh, "service", serviceName);
+        incCounter(COLD_STARTED_PODS_AFTER_DOWNSCALE, afterDownscale, "mesh", mesh, "service", serviceName);
+    }
+
+    /**
+     * Increments the counter metric of schedule iterations in which a service was not downscaled although it has
+     * more pods than it requires
+     *
+     * @param mesh        name of the mesh
+     * @param serviceName name of the service
+     * @param reason      what suppressed the downscale
+     */
+    public void incSuppressedDownscales(final String mesh, final String serviceName, final String reason) {
+        incCounter(SUPPRESSED_DOWNSCALES, 1, "mesh", mesh, "service", serviceName, "reason", reason);
+    }
+
+    /**
+     * Records how long a call to an external API took
+     *
+     * @param api       called API, e.g. sqs or kubernetes
+     * @param operation called operation
+     * @param success   whether the call succeeded
+     * @param nanos     duration of the call in nanoseconds
+     */
+    public void recordApiCallDuration(final String api,
+                                      final String operation,
+                                      final boolean success,
+                                      final long nanos) {
+        recordTimer(API_CALL_DURATION,
+                    Duration.ofNanos(nanos),
+                    "api",
+                    api,
+                    "operation",
+                    operation,
+                    "outcome",
+                    success ? "success" : "error");
+    }
+
+    /**
+     * Records how long a schedule iteration took
+     *
+     * @param duration duration of the iteration
+     */
+    public void recordScheduleTickDuration(final Duration duration) {
+        recordTimer(SCHEDULE_TICK_DURATION, duration);
+    }
+
+    /**
+     * Records how late a schedule iteration started compared to its scheduled time
+     *
+     * @param lag delay of the start of the iteration
+     */
+    public void recordScheduleTickLag(final Duration lag) {
+        recordTimer(SCHEDULE_TICK_LAG, lag);
+    }
+
+    private void incCounter(final String metricName, final double amount, final String... tags) {
+        counters.computeIfAbsent(createMetricId(metricName, tags),
+                                 id -> Counter.builder(metricName)
+                                              .tags(createTags(tags))
+                                              .register(meterRegistry))
+                .increment(amount);
+    }
+
+    private void recordTimer(final String metricName, final Duration duration, final String... tags) {
+        timers.computeIfAbsent(createMetricId(metricName, tags),
+                               id -> Timer.builder(metricName)
+                                          .tags(createTags(tags))
+                                          .publishPercentileHistogram()
+                                          .register(meterRegistry))
+              .record(duration);
+    }
+
+    private void setQueueGauge(final String metricName,
+                               final String mesh,
+                               final String queueName,
+                               final Number value) {
+        setGauge(metricName, value, "mesh", mesh, "queue", queueName);
+    }
+
+    /**
+     * Creates or updates a gauge metric.
+     *
+     * @param metricName name of the metric
+     * @param value      value to set the metric to
+     * @param tags       alternating tag keys and values identifying the gauge
      */
-    public void setMessagesInQueueGauge(final String queueName, final Number value) {
-        final String metricId = createMetricId(queueName);
-        if (!gauges.containsKey(metricId)) {
-            final MutableFloat metricRef = MutableFloat.of(value);
-            Gauge.builder(MESSAGES_IN_QUEUE, metricRef, MutableFloat::floatValue)
+    private void setGauge(final String metricName, final Number value, final String... tags) {
+        getOrCreateGauge(metricName, value, tags).setValue(value);
+    }
+
+    private MutableFloat getOrCreateGauge(final String metricName, final Number initialValue, final String... tags) {
+        return gauges.computeIfAbsent(createMetricId(metricName, tags), id -> {
+            final MutableFloat ref = MutableFloat.of(initialValue);
+            Gauge.builder(metricName, ref, MutableFloat::floatValue)
                  .strongReference(true)
-                 .tags(createTags(queueName))
+                 .tags(createTags(tags))
                  .register(meterRegistry);
-            gauges.put(metricId, metricRef);
-        } else {
-            final MutableFloat metricRef = gauges.get(metricId);
-            metricRef.setValue(value);
-        }
-
-        log.info("Set metric {} for queue {} to value {}", MESSAGES_IN_QUEUE, queueName, value.floatValue());
+            return ref;
+        });
     }
 
     @NotNull
-    private String createMetricId(String queueName) {
-        return MESSAGES_IN_QUEUE + "_" + queueName;
+    private String createMetricId(final String metricName, final String... tags) {
+        return metricName + "_" + String.join("_", tags);
     }
 
-    private List<Tag> createTags(final String queueName) {
-        return List.of(new ImmutableTag("queue", queueName), new ImmutableTag("application", applicationTag));
+    private List<Tag> createTags(final String... tags) {
+        final List<Tag> result = new ArrayList<>();
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            result.add(new ImmutableTag(tags[i], tags[i + 1]));
+        }
+        result.add(new ImmutableTag("application", applicationTag));
+        return result;
     }
 
     /**
      * Gets the current number of messages in a queue from the set gauge metrics.
-     * Should only be called in a schedule iteration after gauges were updated with
-     * com.schoeniu.maha.observability.MetricManager#setMessagesInQueueGauge(java.lang.String, java.lang.Number)
+     * Should only be called after the gauges were updated in a schedule iteration, see
+     * com.schoeniu.maha.observability.MetricManager#getMessagesInQueueGauge(java.lang.String, java.lang.String)
      *
+     * @param mesh      name of the mesh
      * @param queueName name of queue to get the current number of messages for
      * @return number of messages
      */
-    public float getCurrentMessageInQueue(final String queueName) {
-        return gauges.get(createMetricId(queueName))
-                     .floatValue();
+    public float getCurrentMessageInQueue(final String mesh, final String queueName) {
+        final MutableFloat gauge = gauges.get(createMetricId(MESSAGES_IN_QUEUE, "mesh", mesh, "queue", queueName));
+        return gauge == null ? 0 : gauge.floatValue();
     }
 
 }
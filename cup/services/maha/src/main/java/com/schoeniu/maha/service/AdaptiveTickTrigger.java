@@ -0,0 +1,107 @@
+package com.schoeniu.maha.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.stereotype.Component;
+
+import com.schoeniu.maha.observability.MetricManager;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Trigger driving the schedule iterations with an adaptive interval. The interval drops to the minimum while queue
+ * depths change quickly, stays at the base interval while messages are in the queues and grows up to the maximum
+ * while all queues are idle.
+ * <p>
+ * The next iteration is only scheduled after the previous one completed, so iterations never overlap. Iterations
+ * missed because of a long-running one are skipped instead of executed in a row.
+ */
+@Slf4j
+@Component
+public class AdaptiveTickTrigger implements Trigger {
+
+    private final MetricManager metricManager;
+    private final long minIntervalMillis;
+    private final long baseIntervalMillis;
+    private final long maxIntervalMillis;
+    private final float fastChangeThreshold;
+
+    private final Map<String, Integer> lastDepths = new HashMap<>();
+    private float maxRelativeChange;
+    private boolean active;
+    private long intervalMillis;
+
+    public AdaptiveTickTrigger(final MetricManager metricManager,
+                               @Value("${scheduling.tick.minIntervalMillis:250}") final long minIntervalMillis,
+                               @Value("${scheduling.tick.baseIntervalMillis:1000}") final long baseIntervalMillis,
+                               @Value("${scheduling.tick.maxIntervalMillis:5000}") final long maxIntervalMillis,
+                               @Value("${scheduling.tick.fastChangeThreshold:0.1}") final float fastChangeThreshold) {
+        this.metricManager = metricManager;
+        this.minIntervalMillis = minIntervalMillis;
+        this.baseIntervalMillis = baseIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.fastChangeThreshold = fastChangeThreshold;
+        this.intervalMillis = baseIntervalMillis;
+    }
+
+    /**
+     * Records the queue depths polled in the current iteration, to adapt the interval to how fast they change.
+     *
+     * @param depths number of messages per queue
+     */
+    public synchronized void recordQueueDepths(final Map<String, Integer> depths) {
+        depths.forEach((queue, depth) -> {
+            final Integer previous = lastDepths.put(queue, depth);
+            if (previous != null) {
+                final float change = Math.abs(depth - previous) / (float) Math.max(1, Math.max(depth, previous));
+                maxRelativeChange = Math.max(maxRelativeChange, change);
+            }
+            active |= depth > 0;
+        });
+    }
+
+    @Override
+    public synchronized Instant nextExecution(final TriggerContext triggerContext) {
+        final Instant now = triggerContext.getClock()
+                                          .instant();
+        final Instant lastScheduled = triggerContext.lastScheduledExecution();
+        final Instant lastActual = triggerContext.lastActualExecution();
+        final Instant lastCompletion = triggerContext.lastCompletion();
+        if (lastScheduled == null || lastActual == null || lastCompletion == null) {
+            return now.plusMillis(intervalMillis);
+        }
+        metricManager.recordScheduleTickDuration(Duration.between(lastActual, lastCompletion));
+        metricManager.recordScheduleTickLag(Duration.between(lastScheduled, lastActual));
+
+        intervalMillis = calcIntervalMillis();
+        maxRelativeChange = 0;
+        active = false;
+
+        // skip the ticks which were missed while the last iteration was running
+        Instant next = lastScheduled.plusMillis(intervalMillis);
+        if (next.isBefore(now)) {
+            final long missed = Duration.between(next, now)
+                                        .toMillis() / intervalMillis + 1;
+            log.debug("Skipping {} missed schedule iterations.", missed);
+            next = next.plusMillis(missed * intervalMillis);
+        }
+        return next;
+    }
+
+    private long calcIntervalMillis() {
+        if (maxRelativeChange >= fastChangeThreshold) {
+            return minIntervalMillis;
+        }
+        if (active) {
+            return baseIntervalMillis;
+        }
+        return Math.min(Math.max(intervalMillis, baseIntervalMillis) * 2, maxIntervalMillis);
+    }
+
+}
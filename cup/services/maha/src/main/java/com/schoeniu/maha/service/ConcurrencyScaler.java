@@ -0,0 +1,95 @@
+package com.schoeniu.maha.service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.CupApi;
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.VerticalScalingConfig;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.Topology;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service applying the number of listener threads decided by the vertical scaling stage to the pods of the
+ * services. Every ready pod is set once per change, pods started later are set in the following iteration.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ConcurrencyScaler {
+
+    private final K8sApi k8sApi;
+    private final CupApi cupApi;
+
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory(
+            "concurrency-"));
+    /**
+     * Number of listener threads set per pod, keyed by namespace, service and pod name.
+     */
+    private final Map<String, Integer> appliedConcurrency = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the decided number of listener threads on every ready pod of the vertically scaled services of a mesh
+     * whose number differs. Failed pods are set again in the next iteration.
+     *
+     * @param mesh mesh of the services
+     */
+    public void apply(final Mesh mesh) {
+        final VerticalScalingConfig vertical = mesh.getStrategy()
+                                                   .getVertical();
+        if (!vertical.isEnabled()) {
+            return;
+        }
+        final Topology topology = mesh.getTopology();
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            final String serviceName = topology.getService(service);
+            if (!vertical.getServices()
+                         .contains(serviceName)) {
+                continue;
+            }
+            final int threads = mesh.getState()
+                                    .getConcurrency()[service];
+            final String prefix = mesh.getNamespace() + "/" + serviceName + "/";
+            final Map<String, String> podIps = k8sApi.getReadyPodIps(mesh.getNamespace(), serviceName);
+            // removed pods are forgotten
+            appliedConcurrency.keySet()
+                              .removeIf(key -> key.startsWith(prefix)
+                                               && !podIps.containsKey(key.substring(prefix.length())));
+            podIps.forEach((pod, podIp) -> {
+                final String key = prefix + pod;
+                if (Objects.equals(appliedConcurrency.put(key, threads), threads)) {
+                    return;
+                }
+                requestExecutor.execute(() -> {
+                    try {
+                        cupApi.setConcurrency(podIp, vertical.getPort(), threads);
+                        log.debug("Set {} listener threads on pod {} of {}.", threads, pod, serviceName);
+                    } catch (Exception e) {
+                        appliedConcurrency.remove(key, threads);
+                        log.warn("Setting {} listener threads on pod {} of {} failed: {}",
+                                 threads,
+                                 pod,
+                                 serviceName,
+                                 e.getMessage());
+                    }
+                });
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.RateLearningConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.util.Ewma;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for learning the consumption rates per pod of services on queues from the consumption counters
+ * exported by the CUP services.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ConsumptionRateEstimator {
+
+    /**
+     * Messages consumed per minute per pod, averaged over all pods of a service.
+     */
+    private static final String CONSUMPTION_RATE_QUERY =
+            "avg by (application, queue) (rate(application:consumed_from_queue_total[1m])) * 60";
+
+    private final MeshService meshService;
+    private final PrometheusApi prometheusApi;
+    private final MetricManager metricManager;
+
+    /**
+     * Estimates per queue. Every queue is consumed by exactly one service.
+     */
+    private final Map<String, Ewma> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Queries the current consumption rates and adds them to the estimates.
+     * Rates are only learned while a queue has a backlog, because otherwise the pods are not saturated
+     * and the observed rate is limited by the incoming messages instead of the pod capacity.
+     */
+    @Scheduled(fixedDelayString = "${prometheus.queryIntervalMillis:15000}")
+    public void update() {
+        if (meshService.getMeshes()
+                       .stream()
+                       .noneMatch(mesh -> mesh.getStrategy()
+                                              .getRateLearning()
+                                              .isEnabled())) {
+            return;
+        }
+        for (Sample sample : prometheusApi.query(CONSUMPTION_RATE_QUERY)) {
+            final String queue = sample.label("queue");
+            final String service = sample.label("application");
+            final Mesh mesh = findMeshOfQueue(queue);
+            if (mesh == null) {
+                continue;
+            }
+            final RateLearningConfig config = mesh.getStrategy()
+                                                  .getRateLearning();
+            final ConsumerServiceConfig consumer = mesh.getConsumer(queue);
+            if (!config.isEnabled() || service == null || !service.equals(consumer.getServiceName())) {
+                continue;
+            }
+            if (metricManager.getCurrentMessageInQueue(mesh.getName(), queue) < config.getMinBacklog()) {
+                continue;
+            }
+            // learned per listener thread, so vertically scaled pods do not inflate the rate,
+            // threads are not applied in shadow mode
+            final int serviceIndex = mesh.getTopology()
+                                         .getServiceIndex(service);
+            final boolean threadsApplied = serviceIndex >= 0 && !mesh.getStrategy()
+                                                                     .isShadowMode();
+            final int concurrency = threadsApplied ? mesh.getState()
+                                                         .getConcurrency()[serviceIndex] : 1;
+            final Ewma estimate = estimates.computeIfAbsent(queue, key -> new Ewma(config.getAlpha()));
+            estimate.update(sample.value() / concurrency);
+            metricManager.setLearnedConsumptionRateGauge(mesh.getName(), queue, service, estimate.getMean());
+            log.debug("Learned consumption rate of {} on {}: {}", service, queue, estimate);
+        }
+    }
+
+    /**
+     * Gets the learned consumption rate per pod and listener thread of the service consuming a queue.
+     * The lower confidence bound is used, so uncertainty leads to more pods instead of fewer.
+     *
+     * @param mesh           mesh of the queue
+     * @param queue          queue name to consume from
+     * @param configuredRate rate to use while learning is disabled or the estimate is still cold
+     * @return learned rate, or the configured rate
+     */
+    public float getLearnedRate(final Mesh mesh, final String queue, final float configuredRate) {
+        final RateLearningConfig config = mesh.getStrategy()
+                                              .getRateLearning();
+        if (!config.isEnabled()) {
+            return configuredRate;
+        }
+        final Ewma estimate = estimates.get(queue);
+        if (estimate == null || !estimate.isWarm(config.getMinSamples(), config.getMaxRelativeDeviation())) {
+            return configuredRate;
+        }
+        return (float) estimate.getLowerBound(config.getConfidenceZ());
+    }
+
+    /**
+     * Forgets the estimates of queues, e.g. because their config changed and the estimates may not apply anymore.
+     *
+     * @param queues names of the queues consumed from
+     */
+    public void reset(final Collection<String> queues) {
+        estimates.keySet()
+                 .removeAll(queues);
+    }
+
+    private Mesh findMeshOfQueue(final String queue) {
+        if (queue == null) {
+            return null;
+        }
+        return meshService.getMeshes()
+                          .stream()
+                          .filter(mesh -> mesh.getConsumer(queue) != null)
+                          .findFirst()
+                          .orElse(null);
+    }
+
+}
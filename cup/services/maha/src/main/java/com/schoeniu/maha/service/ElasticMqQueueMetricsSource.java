@@ -0,0 +1,48 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.ElasticMqStatsApi;
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Queue metrics source fetching the statistics of all queues from ElasticMQ in one request per schedule iteration.
+ */
+@RequiredArgsConstructor
+@Service
+public class ElasticMqQueueMetricsSource implements QueueMetricsSource {
+
+    private final ElasticMqStatsApi elasticMqStatsApi;
+
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory(
+            "elasticmq-stats-"));
+
+    @Override
+    public QueueMetricsSourceType getType() {
+        return QueueMetricsSourceType.ELASTICMQ_STATS;
+    }
+
+    @Override
+    public Map<String, CompletableFuture<QueueMetrics>> request(final Collection<String> queues) {
+        return QueueMetricsSource.split(CompletableFuture.supplyAsync(elasticMqStatsApi::getQueueMetrics,
+                                                                      requestExecutor),
+                                        queues);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+    }
+
+}
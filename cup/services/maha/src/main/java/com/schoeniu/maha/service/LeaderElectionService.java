@@ -0,0 +1,162 @@
+package com.schoeniu.maha.service;
+
+import java.time.OffsetDateTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.observability.MetricManager;
+
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1LeaseSpec;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for electing the instance which executes the scaling, when several MAHA instances run.
+ * The leader holds a Kubernetes lease and renews it continuously. Standby instances keep reading the queues and
+ * deployments, so they can take over with warm state as soon as the lease of the leader expires or is released.
+ * <p>
+ * Expiry is judged by the local time since the lease was last seen changing, so clock skew between the instances
+ * does not matter.
+ */
+@Slf4j
+@Service
+public class LeaderElectionService {
+
+    private final K8sApi k8SApi;
+    private final MetricManager metricManager;
+    private final boolean enabled;
+    private final String namespace;
+    private final String leaseName;
+    private final int leaseDurationSeconds;
+    private final String identity;
+
+    private volatile boolean leader;
+    private String observedRecord;
+    private long observedTime;
+
+    public LeaderElectionService(final K8sApi k8SApi,
+                                 final MetricManager metricManager,
+                                 @Value("${leader-election.enabled:false}") final boolean enabled,
+                                 @Value("${kubernetes.config.namespace}") final String namespace,
+                                 @Value("${leader-election.leaseName:maha-leader}") final String leaseName,
+                                 @Value("${leader-election.leaseDurationSeconds:15}") final int leaseDurationSeconds,
+                                 @Value("${HOSTNAME:}") final String hostname) {
+        this.k8SApi = k8SApi;
+        this.metricManager = metricManager;
+        this.enabled = enabled;
+        this.namespace = namespace;
+        this.leaseName = leaseName;
+        this.leaseDurationSeconds = leaseDurationSeconds;
+        this.identity = StringUtils.defaultIfBlank(hostname,
+                                                   UUID.randomUUID()
+                                                       .toString());
+    }
+
+    /**
+     * @return true if this instance executes the scaling, always true if leader election is disabled
+     */
+    public boolean isLeader() {
+        return !enabled || leader;
+    }
+
+    /**
+     * Acquires the lease if it is free or expired and renews it while this instance holds it.
+     */
+    @Scheduled(fixedDelayString = "${leader-election.renewIntervalMillis:1000}")
+    public void acquireOrRenew() {
+        if (!enabled) {
+            return;
+        }
+        final boolean wasLeader = leader;
+        try {
+            leader = tryAcquireOrRenew();
+        } catch (ApiException e) {
+            log.warn("Could not acquire or renew lease {}: {} {}", leaseName, e.getCode(), e.getMessage());
+            leader = false;
+        }
+        if (leader != wasLeader) {
+            log.info("Instance {} {} leadership.", identity, leader ? "acquired" : "lost");
+        }
+        metricManager.setLeaderGauge(leader);
+    }
+
+    private boolean tryAcquireOrRenew() throws ApiException {
+        final long now = System.currentTimeMillis();
+        final OffsetDateTime time = OffsetDateTime.now();
+        final Optional<V1Lease> current = k8SApi.readLease(namespace, leaseName);
+        if (current.isEmpty()) {
+            final V1Lease lease = new V1Lease().metadata(new V1ObjectMeta().name(leaseName)
+                                                                           .namespace(namespace))
+                                               .spec(new V1LeaseSpec().holderIdentity(identity)
+                                                                      .leaseDurationSeconds(leaseDurationSeconds)
+                                                                      .acquireTime(time)
+                                                                      .renewTime(time)
+                                                                      .leaseTransitions(0));
+            k8SApi.createLease(namespace, lease);
+            return true;
+        }
+
+        final V1Lease lease = current.get();
+        final V1LeaseSpec spec = Objects.requireNonNullElseGet(lease.getSpec(), V1LeaseSpec::new);
+        final String record = spec.getHolderIdentity() + "@" + spec.getRenewTime();
+        if (!record.equals(observedRecord)) {
+            observedRecord = record;
+            observedTime = now;
+        }
+        final boolean held = identity.equals(spec.getHolderIdentity());
+        final long durationMillis = Objects.requireNonNullElse(spec.getLeaseDurationSeconds(), leaseDurationSeconds)
+                                    * 1000L;
+        final boolean expired = StringUtils.isBlank(spec.getHolderIdentity()) || now - observedTime > durationMillis;
+        if (!held && !expired) {
+            return false;
+        }
+        if (!held) {
+            spec.setHolderIdentity(identity);
+            spec.setAcquireTime(time);
+            spec.setLeaseTransitions(Objects.requireNonNullElse(spec.getLeaseTransitions(), 0) + 1);
+        }
+        spec.setLeaseDurationSeconds(leaseDurationSeconds);
+        spec.setRenewTime(time);
+        lease.setSpec(spec);
+        k8SApi.replaceLease(namespace, lease);
+        return true;
+    }
+
+    /**
+     * Releases the lease on shutdown, so a standby takes over without waiting for the lease to expire.
+     */
+    @PreDestroy
+    public void release() {
+        if (!enabled || !leader) {
+            return;
+        }
+        leader = false;
+        try {
+            final Optional<V1Lease> lease = k8SApi.readLease(namespace, leaseName);
+            if (lease.isPresent() && lease.get()
+                                          .getSpec() != null && identity.equals(lease.get()
+                                                                                     .getSpec()
+                                                                                     .getHolderIdentity())) {
+                lease.get()
+                     .getSpec()
+                     .holderIdentity(null)
+                     .leaseDurationSeconds(1);
+                k8SApi.replaceLease(namespace, lease.get());
+                log.info("Instance {} released lease {}.", identity, leaseName);
+            }
+        } catch (ApiException e) {
+            log.warn("Could not release lease {}: {} {}", leaseName, e.getCode(), e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package com.schoeniu.maha.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+import com.schoeniu.maha.topology.Mesh;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service holding the meshes scaled by this MAHA instance. The top level queues of the scaling config form the
+ * default mesh in the configured namespace, every entry under meshes forms an additional mesh.
+ * The meshes can be replaced at runtime by a reloaded scaling config.
+ */
+@Slf4j
+@Service
+public class MeshService {
+
+    public static final String DEFAULT_MESH = "default";
+
+    private final String defaultNamespace;
+    private final String prometheusVisibleQuery;
+    private volatile Map<String, Mesh> meshes;
+    private final AtomicReference<Map<String, Mesh>> reloadedMeshes = new AtomicReference<>();
+
+    public MeshService(final ScalingConfigProperties scalingConfig,
+                       @Value("${kubernetes.config.namespace}") final String defaultNamespace,
+                       @Value("${queue-metrics.prometheus.visibleQuery:}") final String prometheusVisibleQuery) {
+        this.defaultNamespace = defaultNamespace;
+        this.prometheusVisibleQuery = prometheusVisibleQuery;
+        this.meshes = compile(scalingConfig);
+    }
+
+    /**
+     * Compiles the meshes of a scaling config.
+     *
+     * @param scalingConfig scaling config
+     * @return meshes by name in configuration order
+     * @throws IllegalStateException if the config is invalid
+     */
+    private Map<String, Mesh> compile(final ScalingConfigProperties scalingConfig) {
+        final Map<String, Mesh> compiled = new LinkedHashMap<>();
+        if (scalingConfig.getQueuesConsumedFrom() != null) {
+            addMesh(compiled,
+                    new Mesh(DEFAULT_MESH,
+                             defaultNamespace,
+                             scalingConfig.getStrategy(),
+                             scalingConfig.getQueuesConsumedFrom()));
+        }
+        scalingConfig.getMeshes()
+                     .forEach((name, meshConfig) -> {
+                         if (compiled.containsKey(name)) {
+                             throw new IllegalStateException("Mesh " + name + " is defined twice");
+                         }
+                         addMesh(compiled,
+                                 new Mesh(name,
+                                          StringUtils.defaultIfBlank(meshConfig.getNamespace(), defaultNamespace),
+                                          meshConfig.getStrategy(),
+                                          meshConfig.getQueuesConsumedFrom()));
+                     });
+        if (compiled.isEmpty()) {
+            throw new IllegalStateException("No mesh is configured");
+        }
+        validateDistinctQueues(compiled);
+        validateQueueMetricsSources(compiled);
+        return compiled;
+    }
+
+    private void addMesh(final Map<String, Mesh> compiled, final Mesh mesh) {
+        compiled.put(mesh.getName(), mesh);
+        log.info("Compiled topology of mesh {} in namespace {} with {} queues, {} services and {} edges.",
+                 mesh.getName(),
+                 mesh.getNamespace(),
+                 mesh.getTopology()
+                     .getNumberOfQueues(),
+                 mesh.getTopology()
+                     .getNumberOfServices(),
+                 mesh.getTopology()
+                     .getNumberOfEdges());
+    }
+
+    /**
+     * Queues are identified by their name only, so a queue consumed in two meshes would be scaled twice.
+     */
+    private static void validateDistinctQueues(final Map<String, Mesh> compiled) {
+        final Map<String, String> meshOfQueue = new HashMap<>();
+        compiled.values()
+                .forEach(mesh -> mesh.getQueuesConsumedFrom()
+                                     .keySet()
+                                     .forEach(queue -> {
+                                         final String other = meshOfQueue.put(queue, mesh.getName());
+                                         if (other != null) {
+                                             throw new IllegalStateException("Queue " + queue
+                                                                             + " is consumed in mesh " + other
+                                                                             + " and mesh " + mesh.getName());
+                                         }
+                                     }));
+    }
+
+    /**
+     * The Prometheus source has no default query for the visible messages, without one every queue of the mesh would
+     * be unknown and never scaled.
+     */
+    private void validateQueueMetricsSources(final Map<String, Mesh> compiled) {
+        if (StringUtils.isNotBlank(prometheusVisibleQuery)) {
+            return;
+        }
+        compiled.values()
+                .stream()
+                .filter(mesh -> mesh.getStrategy()
+                                    .getQueueMetricsSource() == QueueMetricsSourceType.PROMETHEUS)
+                .findFirst()
+                .ifPresent(mesh -> {
+                    throw new IllegalStateException("Mesh " + mesh.getName()
+                                                    + " queries its queue metrics from Prometheus, but"
+                                                    + " queue-metrics.prometheus.visibleQuery is not configured");
+                });
+    }
+
+    /**
+     * Compiles the meshes of a reloaded scaling config. They replace the current meshes with the next
+     * {@link #applyReload()}, so a schedule iteration never sees a partially replaced config.
+     *
+     * @param scalingConfig reloaded scaling config
+     * @return names of the queues whose consumer config changed or which are not consumed anymore
+     * @throws IllegalStateException if the config is invalid, the current meshes are kept then
+     */
+    public Set<String> prepareReload(final ScalingConfigProperties scalingConfig) {
+        final Map<String, Mesh> compiled = compile(scalingConfig);
+        final Set<String> changedQueues = new TreeSet<>();
+        meshes.values()
+              .forEach(mesh -> mesh.getQueuesConsumedFrom()
+                                   .forEach((queue, consumer) -> {
+                                       final boolean unchanged = compiled.values()
+                                                                         .stream()
+                                                                         .map(other -> other.getConsumer(queue))
+                                                                         .anyMatch(consumer::equals);
+                                       if (!unchanged) {
+                                           changedQueues.add(queue);
+                                       }
+                                   }));
+        reloadedMeshes.set(compiled);
+        return changedQueues;
+    }
+
+    /**
+     * Swaps in the meshes of a reloaded scaling config, if one was prepared. The scaling state of queues and
+     * services which are still part of a mesh of the same name is carried over, so e.g. stabilization timers keep
+     * running. Must be called between schedule iterations, by the thread running them. If the state of a current
+     * mesh is in use by another thread, the reloaded config stays prepared for the next call.
+     */
+    public void applyReload() {
+        final Map<String, Mesh> compiled = reloadedMeshes.getAndSet(null);
+        if (compiled == null) {
+            return;
+        }
+        final List<Mesh> locked = new ArrayList<>();
+        try {
+            for (Mesh previous : meshes.values()) {
+                if (!previous.getLock()
+                             .tryLock()) {
+                    log.debug("Mesh {} is in use, deferring the reloaded scaling config.", previous.getName());
+                    reloadedMeshes.compareAndSet(null, compiled);
+                    return;
+                }
+                locked.add(previous);
+            }
+            compiled.values()
+                    .forEach(mesh -> {
+                        final Mesh previous = meshes.get(mesh.getName());
+                        if (previous != null) {
+                            mesh.getState()
+                                .carryOver(previous.getTopology(), previous.getState(), mesh.getTopology());
+                        }
+                    });
+            meshes = compiled;
+        } finally {
+            locked.forEach(mesh -> mesh.getLock()
+                                       .unlock());
+        }
+        log.info("Applied reloaded scaling config with meshes {}.", compiled.keySet());
+    }
+
+    /**
+     * @return all meshes in configuration order
+     */
+    public Collection<Mesh> getMeshes() {
+        return Collections.unmodifiableCollection(meshes.values());
+    }
+
+    /**
+     * @param name mesh name
+     * @return mesh with the given name, null if unknown
+     */
+    public Mesh getMesh(final String name) {
+        return meshes.get(name);
+    }
+
+    /**
+     * Finds the first mesh scaled in a namespace.
+     *
+     * @param namespace kubernetes namespace
+     * @return first mesh of the namespace, empty if no mesh is scaled in it
+     */
+    public Optional<Mesh> findMeshInNamespace(final String namespace) {
+        return meshes.values()
+                     .stream()
+                     .filter(mesh -> mesh.getNamespace()
+                                         .equals(namespace))
+                     .findFirst();
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.schoeniu.maha.service;
+
+import java.util.Arrays;
+
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.PodBudgetConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.ScalingState;
+import com.schoeniu.maha.topology.Topology;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service splitting a limited pod budget across the services of a mesh. The required pods of every service are
+ * derived from the total rates of the whole pipeline, so a service with a fraction of its required pods consumes
+ * that fraction of the messages flowing through it. The end-to-end throughput is limited by the service with the
+ * lowest fraction, so every pod goes to the current bottleneck, upstream services first if several are equally
+ * short. Once the bottleneck cannot get another pod, it and the services upstream of it get no more pods, as
+ * their messages would only wait for it, and the services downstream of a blocked service get no more pods than
+ * the fraction it consumes.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class PodBudgetAllocator {
+
+    private final MetricManager metricManager;
+
+    /**
+     * Allocates the pod budget of a mesh to its services. If the required pods exceed the budget, they are reduced
+     * to the allocation. Every service with required pods keeps at least one pod as long as the budget allows,
+     * services without required pods are expected to be kept at one pod and are charged for it. The allocation is
+     * kept in the scaling state as upper limit of the pods of every service.
+     *
+     * @param mesh mesh whose required pods are allocated
+     */
+    public void allocate(final Mesh mesh) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final PodBudgetConfig budget = strategy.getPodBudget();
+        if (!budget.isEnabled()) {
+            return;
+        }
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        final int[] requiredPods = state.getRequiredPods();
+        final int[] allocatedPods = state.getAllocatedPods();
+        final boolean[] blocked = state.getBudgetBlocked();
+        final float[] podCosts = state.getPodCosts();
+        final int services = topology.getNumberOfServices();
+
+        float remaining = budget.getTotal();
+        float requiredCost = 0;
+        for (int service = 0; service < services; service++) {
+            final Float podCost = budget.getPodCosts()
+                                        .get(topology.getService(service));
+            podCosts[service] = podCost == null ? 1 : podCost;
+            // pods above the maximum are never scaled to, so they are not worth any budget
+            requiredPods[service] = Math.min(requiredPods[service], strategy.getMaxNumberOfPods());
+            requiredCost += podCosts[service] * Math.max(requiredPods[service], 1);
+        }
+        if (requiredCost <= remaining) {
+            for (int service = 0; service < services; service++) {
+                allocatedPods[service] = Math.max(requiredPods[service], 1);
+            }
+            metricManager.setPodBudgetServedFractionGauge(mesh.getName(), 1);
+            return;
+        }
+
+        Arrays.fill(allocatedPods, 0);
+        Arrays.fill(blocked, false);
+        for (int service = 0; service < services; service++) {
+            if (requiredPods[service] == 0) {
+                remaining -= podCosts[service];
+            }
+        }
+        int bottleneck;
+        while ((bottleneck = findBottleneck(topology, requiredPods, allocatedPods, blocked)) >= 0) {
+            if (podCosts[bottleneck] <= remaining) {
+                allocatedPods[bottleneck]++;
+                remaining -= podCosts[bottleneck];
+            } else {
+                block(topology, bottleneck, blocked);
+            }
+        }
+
+        float servedFraction = 1;
+        for (int service = 0; service < services; service++) {
+            if (requiredPods[service] > 0) {
+                servedFraction = Math.min(servedFraction, allocatedPods[service] / (float) requiredPods[service]);
+                if (log.isDebugEnabled() && allocatedPods[service] < requiredPods[service]) {
+                    log.debug("Service {} gets {} of {} required pods within the pod budget.",
+                              topology.getService(service),
+                              allocatedPods[service],
+                              requiredPods[service]);
+                }
+                requiredPods[service] = allocatedPods[service];
+            }
+            // a service is never scaled below one pod for the budget, so a budget smaller than that is exceeded
+            allocatedPods[service] = Math.max(allocatedPods[service], 1);
+        }
+        metricManager.setPodBudgetServedFractionGauge(mesh.getName(), servedFraction);
+    }
+
+    /**
+     * Finds the service consuming the lowest fraction of its required rates, which still needs pods and is not
+     * held back by a blocked service upstream of it. Of services with the same fraction, the one with the fewest
+     * services upstream of it is chosen, as the services downstream of it can only consume what it produces.
+     *
+     * @return service ordinal, -1 if no service can use another pod
+     */
+    private static int findBottleneck(final Topology topology,
+                                      final int[] requiredPods,
+                                      final int[] allocatedPods,
+                                      final boolean[] blocked) {
+        int bottleneck = -1;
+        float lowestFraction = Float.MAX_VALUE;
+        for (int service = 0; service < requiredPods.length; service++) {
+            if (blocked[service] || allocatedPods[service] >= requiredPods[service]) {
+                continue;
+            }
+            final float fraction = allocatedPods[service] / (float) requiredPods[service];
+            if (fraction > lowestFraction || fraction == lowestFraction && topology.getNumberOfUpstreamServices(
+                    service) >= topology.getNumberOfUpstreamServices(bottleneck)) {
+                continue;
+            }
+            if (!isHeldBack(topology, service, fraction, requiredPods, allocatedPods, blocked)) {
+                lowestFraction = fraction;
+                bottleneck = service;
+            }
+        }
+        return bottleneck;
+    }
+
+    /**
+     * Checks whether a blocked service upstream of a service consumes at most the fraction of its required rates
+     * the service already consumes, so another pod for the service would only wait for messages.
+     */
+    private static boolean isHeldBack(final Topology topology,
+                                      final int service,
+                                      final float fraction,
+                                      final int[] requiredPods,
+                                      final int[] allocatedPods,
+                                      final boolean[] blocked) {
+        for (int upstream = 0; upstream < requiredPods.length; upstream++) {
+            if (blocked[upstream] && topology.isUpstreamService(service, upstream) && requiredPods[upstream] > 0
+                && allocatedPods[upstream] / (float) requiredPods[upstream] <= fraction) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Blocks a bottleneck which cannot get another pod and all services upstream of it.
+     */
+    private static void block(final Topology topology, final int bottleneck, final boolean[] blocked) {
+        blocked[bottleneck] = true;
+        for (int service = 0; service < blocked.length; service++) {
+            if (topology.isUpstreamService(bottleneck, service)) {
+                blocked[service] = true;
+            }
+        }
+    }
+
+}
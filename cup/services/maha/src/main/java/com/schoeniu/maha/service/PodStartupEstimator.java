@@ -0,0 +1,87 @@
+package com.schoeniu.maha.service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.PodStartupListener;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.PodStartupConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.util.Ewma;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for estimating how long new pods of a deployment take until they are ready, from the pod startups
+ * observed by the Kubernetes API.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class PodStartupEstimator implements PodStartupListener {
+
+    private final MeshService meshService;
+    private final MetricManager metricManager;
+
+    /**
+     * Estimates per namespace and deployment.
+     */
+    private final Map<String, Map<String, Ewma>> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Records the time a pod of a deployment took from its creation until it was ready for the first time.
+     *
+     * @param namespace      namespace of the deployment
+     * @param deployment     deployment the pod belongs to
+     * @param startupSeconds seconds from creation to readiness
+     */
+    public void record(final String namespace, final String deployment, final double startupSeconds) {
+        final Optional<Mesh> mesh = meshService.findMeshInNamespace(namespace);
+        if (mesh.isEmpty()) {
+            return;
+        }
+        final PodStartupConfig config = mesh.get()
+                                            .getStrategy()
+                                            .getPodStartup();
+        if (startupSeconds < 0 || startupSeconds > config.getMaxStartupSeconds()) {
+            log.debug("Ignoring startup time of {} seconds for a pod of {}.", startupSeconds, deployment);
+            return;
+        }
+        final Ewma estimate = estimates.computeIfAbsent(namespace, key -> new ConcurrentHashMap<>())
+                                       .computeIfAbsent(deployment, key -> new Ewma(config.getAlpha()));
+        estimate.update(startupSeconds);
+        metricManager.setPodStartupSecondsGauge(mesh.get()
+                                                    .getName(),
+                                                deployment,
+                                                estimate.getMean());
+        log.debug("Pod of {} started in {} seconds, estimate is {}.", deployment, startupSeconds, estimate);
+    }
+
+    @Override
+    public void onPodStarted(final String namespace, final String deployment, final double startupSeconds) {
+        record(namespace, deployment, startupSeconds);
+    }
+
+    /**
+     * Gets the estimated startup time of new pods of a deployment.
+     *
+     * @param mesh       mesh the deployment is scaled in
+     * @param deployment deployment name
+     * @return measured startup time in seconds, or the configured default if no pod start was observed yet
+     */
+    public float getStartupSeconds(final Mesh mesh, final String deployment) {
+        final Map<String, Ewma> namespaceEstimates = estimates.get(mesh.getNamespace());
+        final Ewma estimate = namespaceEstimates == null ? null : namespaceEstimates.get(deployment);
+        if (estimate == null) {
+            return mesh.getStrategy()
+                       .getPodStartup()
+                       .getDefaultStartupSeconds();
+        }
+        return (float) estimate.getMean();
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.collections4.MapUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.RatioLearningConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.util.Ewma;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for measuring the relative production rates between consumed and produced queues from the
+ * production and consumption counters exported by the CUP services.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class ProductionRatioEstimator {
+
+    private static final String PRODUCED_QUERY =
+            "sum by (application, queue) (rate(application:produced_to_queue_total[1m])) * 60";
+    private static final String CONSUMED_QUERY =
+            "sum by (application, queue) (rate(application:consumed_from_queue_total[1m])) * 60";
+
+    private final MeshService meshService;
+    private final PrometheusApi prometheusApi;
+    private final MetricManager metricManager;
+
+    /**
+     * Estimates per consumed queue and produced queue.
+     */
+    private final Map<String, Map<String, Ewma>> estimates = new ConcurrentHashMap<>();
+
+    /**
+     * Queries the current production and consumption rates, adds the resulting ratios to the estimates and
+     * exports the ratios currently in use.
+     * <p>
+     * The counters only tell how much a service produced to a queue, not from which consumed queue the messages
+     * originated. If a service produces to the same queue from several consumed queues, the produced rate is
+     * split between them proportionally to their configured ratios and consumption rates.
+     */
+    @Scheduled(fixedDelayString = "${prometheus.queryIntervalMillis:15000}")
+    public void update() {
+        Map<String, Float> produced = null;
+        Map<String, Float> consumed = null;
+        for (Mesh mesh : meshService.getMeshes()) {
+            final RatioLearningConfig config = mesh.getStrategy()
+                                                   .getRatioLearning();
+            if (config.isEnabled()) {
+                if (produced == null) {
+                    produced = queryRates(PRODUCED_QUERY);
+                    consumed = queryRates(CONSUMED_QUERY);
+                }
+                for (Map.Entry<String, ConsumerServiceConfig> entry : mesh.getQueuesConsumedFrom()
+                                                                          .entrySet()) {
+                    updateEstimates(mesh, entry.getKey(), entry.getValue(), produced, consumed, config);
+                }
+            }
+            mesh.getQueuesConsumedFrom()
+                .forEach((queue, consumer) -> {
+                    if (MapUtils.isNotEmpty(consumer.getQueuesProducedTo())) {
+                        consumer.getQueuesProducedTo()
+                                .forEach((producedQueue, producerConfig) -> metricManager.setRelativeProductionRateGauge(
+                                        mesh.getName(),
+                                        queue,
+                                        producedQueue,
+                                        getRelativeProductionRate(mesh,
+                                                                  queue,
+                                                                  producedQueue,
+                                                                  producerConfig.getRelativeProductionRate())));
+                    }
+                });
+        }
+    }
+
+    private void updateEstimates(final Mesh mesh,
+                                 final String queue,
+                                 final ConsumerServiceConfig consumer,
+                                 final Map<String, Float> produced,
+                                 final Map<String, Float> consumed,
+                                 final RatioLearningConfig config) {
+        final String service = consumer.getServiceName();
+        if (MapUtils.isEmpty(consumer.getQueuesProducedTo())
+            || consumed.getOrDefault(createKey(service, queue), 0F) < config.getMinConsumptionRate()) {
+            return;
+        }
+        consumer.getQueuesProducedTo()
+                .forEach((producedQueue, producerConfig) -> {
+                    final float expectedProduction = getExpectedProduction(mesh,
+                                                                           service,
+                                                                           producedQueue,
+                                                                           consumed);
+                    if (expectedProduction <= 0) {
+                        return;
+                    }
+                    final float observedProduction = produced.getOrDefault(createKey(service, producedQueue), 0F);
+                    final float ratio =
+                            producerConfig.getRelativeProductionRate() * observedProduction / expectedProduction;
+                    estimates.computeIfAbsent(queue, key -> new ConcurrentHashMap<>())
+                             .computeIfAbsent(producedQueue, key -> new Ewma(config.getAlpha()))
+                             .update(ratio);
+                });
+    }
+
+    /**
+     * Calculates how many messages per minute a service should produce to a queue according to the configured
+     * relative production rates of all queues it consumes from.
+     */
+    private float getExpectedProduction(final Mesh mesh,
+                                        final String service,
+                                        final String producedQueue,
+                                        final Map<String, Float> consumed) {
+        float expected = 0;
+        for (Map.Entry<String, ConsumerServiceConfig> entry : mesh.getQueuesConsumedFrom()
+                                                                  .entrySet()) {
+            final ConsumerServiceConfig consumer = entry.getValue();
+            if (!service.equals(consumer.getServiceName()) || MapUtils.isEmpty(consumer.getQueuesProducedTo())) {
+                continue;
+            }
+            final ProducerQueueConfig producerConfig = consumer.getQueuesProducedTo()
+                                                               .get(producedQueue);
+            if (producerConfig != null) {
+                expected += producerConfig.getRelativeProductionRate() * consumed.getOrDefault(createKey(service,
+                                                                                                        entry.getKey()),
+                                                                                              0F);
+            }
+        }
+        return expected;
+    }
+
+    private Map<String, Float> queryRates(final String query) {
+        final Map<String, Float> result = new HashMap<>();
+        for (Sample sample : prometheusApi.query(query)) {
+            result.put(createKey(sample.label("application"), sample.label("queue")), (float) sample.value());
+        }
+        return result;
+    }
+
+    /**
+     * Gets the relative production rate from a consumed to a produced queue.
+     * Uses the measured ratio if available and falls back to the configured one while the estimate is cold.
+     *
+     * @param mesh           mesh of the queues
+     * @param queue          queue consumed from
+     * @param producedQueue  queue produced to
+     * @param configuredRate configured relative production rate of the edge
+     * @return relative production rate
+     */
+    public float getRelativeProductionRate(final Mesh mesh,
+                                           final String queue,
+                                           final String producedQueue,
+                                           final float configuredRate) {
+        final RatioLearningConfig config = mesh.getStrategy()
+                                               .getRatioLearning();
+        if (!config.isEnabled()) {
+            return configuredRate;
+        }
+        final Map<String, Ewma> producedEstimates = estimates.get(queue);
+        final Ewma estimate = producedEstimates == null ? null : producedEstimates.get(producedQueue);
+        if (estimate == null || estimate.getSamples() < config.getMinSamples()) {
+            return configuredRate;
+        }
+        return (float) estimate.getMean();
+    }
+
+    private String createKey(final String first, final String second) {
+        return first + "/" + second;
+    }
+
+    /**
+     * Forgets the estimates of queues, e.g. because their config changed and the estimates may not apply anymore.
+     *
+     * @param queues names of the queues consumed from
+     */
+    public void reset(final Collection<String> queues) {
+        estimates.keySet()
+                 .removeAll(queues);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Queue metrics source querying the number of messages of all queues from Prometheus, with one configurable PromQL
+ * query per message state. Every query has to result in one series per queue, labelled with the queue name, whose
+ * value is the current number of messages in the queue, e.g. a gauge exported by a queue exporter. It is only as
+ * recent as the last scrape. There is no default for the visible messages, as the counters of the consumers and
+ * producers are reset by restarts and do not exist for queues fed from outside the mesh.
+ */
+@RequiredArgsConstructor
+@Service
+public class PrometheusQueueMetricsSource implements QueueMetricsSource {
+
+    @Value("${queue-metrics.prometheus.queueLabel:queue}")
+    private String queueLabel;
+
+    @Value("${queue-metrics.prometheus.visibleQuery:}")
+    private String visibleQuery;
+
+    @Value("${queue-metrics.prometheus.inFlightQuery:}")
+    private String inFlightQuery;
+
+    @Value("${queue-metrics.prometheus.delayedQuery:}")
+    private String delayedQuery;
+
+    private final PrometheusApi prometheusApi;
+
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory(
+            "prometheus-queue-metrics-"));
+
+    @Override
+    public QueueMetricsSourceType getType() {
+        return QueueMetricsSourceType.PROMETHEUS;
+    }
+
+    @Override
+    public Map<String, CompletableFuture<QueueMetrics>> request(final Collection<String> queues) {
+        if (visibleQuery == null || visibleQuery.isBlank()) {
+            return QueueMetricsSource.split(CompletableFuture.failedFuture(new IllegalStateException(
+                    "queue-metrics.prometheus.visibleQuery must be configured")), queues);
+        }
+        return QueueMetricsSource.split(CompletableFuture.supplyAsync(this::queryQueueMetrics, requestExecutor),
+                                        queues);
+    }
+
+    /**
+     * Queries the number of messages of all queues. Queues without a visible series are left out, the in-flight and
+     * delayed messages are 0 if their query is not configured or has no series for the queue.
+     */
+    private Map<String, QueueMetrics> queryQueueMetrics() {
+        final Map<String, Integer> inFlight = query(inFlightQuery);
+        final Map<String, Integer> delayed = query(delayedQuery);
+        final Map<String, QueueMetrics> result = new HashMap<>();
+        query(visibleQuery).forEach((queue, visible) -> result.put(queue,
+                                                                   new QueueMetrics(visible,
+                                                                                    inFlight.getOrDefault(queue, 0),
+                                                                                    delayed.getOrDefault(queue, 0))));
+        return result;
+    }
+
+    private Map<String, Integer> query(final String query) {
+        final Map<String, Integer> result = new HashMap<>();
+        if (query == null || query.isBlank()) {
+            return result;
+        }
+        for (Sample sample : prometheusApi.query(query)) {
+            final String queue = sample.labels()
+                                       .get(queueLabel);
+            if (queue != null) {
+                result.put(queue, (int) Math.max(0, Math.round(sample.value())));
+            }
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+    }
+
+}
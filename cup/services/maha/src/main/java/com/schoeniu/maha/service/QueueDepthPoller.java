@@ -0,0 +1,104 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+import com.schoeniu.maha.observability.MetricManager;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for querying the number of messages of many queues in parallel within a deadline per schedule iteration.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class QueueDepthPoller {
+
+    @Value("${aws.sqs.client.pollDeadlineMillis:800}")
+    private long pollDeadlineMillis;
+
+    private final List<QueueMetricsSource> queueMetricsSources;
+    private final MetricManager metricManager;
+
+    private final Map<String, Integer> lastKnownDepths = new ConcurrentHashMap<>();
+
+    /**
+     * Queries the number of messages of all given queues in parallel from a source.
+     * Queues which do not answer within the deadline or fail fall back to their last known number of messages
+     * and are flagged as stale in the metrics. Queues which never answered are unknown and left out of the result,
+     * as assuming them empty would downscale their consumers. The in-flight and delayed messages are only exported.
+     *
+     * @param mesh       name of the mesh of the queues
+     * @param sourceType source to query
+     * @param queues     names of the queues to query
+     * @return map with queue names as key and number of visible messages as value, without unknown queues
+     */
+    public Map<String, Integer> poll(final String mesh,
+                                     final QueueMetricsSourceType sourceType,
+                                     final Collection<String> queues) {
+        final Map<String, CompletableFuture<QueueMetrics>> requests = getSource(sourceType).request(queues);
+
+        try {
+            CompletableFuture.allOf(requests.values()
+                                            .toArray(CompletableFuture[]::new))
+                             .get(pollDeadlineMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Not all queues answered within {} millis.", pollDeadlineMillis);
+        } catch (ExecutionException e) {
+            log.warn("Querying number of messages failed: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        }
+
+        final Map<String, Integer> result = new HashMap<>();
+        requests.forEach((queue, request) -> {
+            final boolean fresh = request.isDone() && !request.isCompletedExceptionally();
+            if (fresh) {
+                final QueueMetrics metrics = request.join();
+                lastKnownDepths.put(queue, metrics.visible());
+                metricManager.setMessagesInFlightGauge(mesh, queue, metrics.inFlight());
+                metricManager.setMessagesDelayedGauge(mesh, queue, metrics.delayed());
+            } else {
+                request.cancel(true);
+                if (lastKnownDepths.containsKey(queue)) {
+                    log.warn("Using last known number of messages {} for stale queue {}.",
+                             lastKnownDepths.get(queue),
+                             queue);
+                } else {
+                    log.warn("Number of messages of queue {} is unknown.", queue);
+                }
+            }
+            final Integer depth = lastKnownDepths.get(queue);
+            if (depth != null) {
+                result.put(queue, depth);
+            }
+            metricManager.setQueueDepthStaleGauge(mesh, queue, !fresh);
+        });
+        return result;
+    }
+
+    private QueueMetricsSource getSource(final QueueMetricsSourceType sourceType) {
+        for (QueueMetricsSource source : queueMetricsSources) {
+            if (source.getType() == sourceType) {
+                return source;
+            }
+        }
+        throw new IllegalStateException("No queue metrics source of type " + sourceType);
+    }
+
+}
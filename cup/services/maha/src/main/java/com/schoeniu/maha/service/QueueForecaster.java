@@ -0,0 +1,122 @@
+package com.schoeniu.maha.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ForecastConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.util.Ewma;
+import com.schoeniu.maha.util.HoltLinearForecast;
+import com.schoeniu.maha.util.TimeSeriesRingBuffer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for forecasting the number of messages in queues with Holt linear smoothing, e.g. one pod startup
+ * interval ahead.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class QueueForecaster {
+
+    private static final float ERROR_ALPHA = 0.1F;
+
+    private final MetricManager metricManager;
+
+    private final Map<String, QueueForecast> forecasts = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the current number of messages of a queue to its forecast model and evaluates the error of the
+     * forecast which was made for this point in time.
+     *
+     * @param mesh          mesh of the queue
+     * @param queue         queue name
+     * @param time          current time in millis
+     * @param messages      current number of messages in the queue
+     * @param horizonMillis how far ahead to forecast, usually the startup time of the consuming pods
+     */
+    public void record(final Mesh mesh,
+                       final String queue,
+                       final long time,
+                       final float messages,
+                       final long horizonMillis) {
+        final ForecastConfig config = mesh.getStrategy()
+                                          .getForecast();
+        QueueForecast forecast = forecasts.get(queue);
+        if (forecast == null) {
+            forecast = forecasts.computeIfAbsent(queue, q -> new QueueForecast(config));
+        }
+
+        // evaluate the newest forecast which targeted a time up to now
+        boolean evaluated = false;
+        float forecastValue = 0;
+        while (!forecast.pending.isEmpty() && forecast.pending.getTime(0) <= time) {
+            forecastValue = forecast.pending.getValue(0);
+            forecast.pending.removeOldest();
+            evaluated = true;
+        }
+        if (evaluated) {
+            final float error = forecastValue - messages;
+            forecast.absoluteError.update(Math.abs(error));
+            metricManager.setForecastErrorGauge(mesh.getName(), queue, error);
+            metricManager.setForecastMeanAbsoluteErrorGauge(mesh.getName(),
+                                                           queue,
+                                                           forecast.absoluteError.getMean());
+        }
+
+        forecast.model.update(time, messages);
+        final float predicted = Math.max(0, forecast.model.forecast(horizonMillis));
+        forecast.pending.add(time + horizonMillis, predicted);
+        metricManager.setForecastGauge(mesh.getName(), queue, predicted);
+    }
+
+    /**
+     * Gets the forecast number of messages of a queue after the last recorded sample.
+     *
+     * @param queue         queue name
+     * @param horizonMillis how far ahead to forecast
+     * @return forecast number of messages, never negative
+     */
+    public float getForecast(final String queue, final long horizonMillis) {
+        final QueueForecast forecast = forecasts.get(queue);
+        if (forecast == null) {
+            return 0;
+        }
+        return Math.max(0, forecast.model.forecast(horizonMillis));
+    }
+
+    /**
+     * Gets the smoothed net growth of a queue, meaning the rate of incoming minus consumed messages.
+     *
+     * @param queue queue name
+     * @return messages per minute the queue grows, negative if it shrinks
+     */
+    public float getTrend(final String queue) {
+        final QueueForecast forecast = forecasts.get(queue);
+        return forecast == null ? 0 : forecast.model.getTrend();
+    }
+
+    /**
+     * Forecast state of a single queue.
+     */
+    private static class QueueForecast {
+
+        private final HoltLinearForecast model;
+        /**
+         * Forecasts which were made but whose target time is not reached yet, keyed by target time.
+         */
+        private final TimeSeriesRingBuffer pending;
+        private final Ewma absoluteError = new Ewma(ERROR_ALPHA);
+
+        QueueForecast(final ForecastConfig config) {
+            model = new HoltLinearForecast(config.getAlpha(), config.getBeta());
+            pending = new TimeSeriesRingBuffer(config.getBufferSize());
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+
+/**
+ * Source of the number of messages in queues, selected per mesh by its strategy.
+ */
+public interface QueueMetricsSource {
+
+    /**
+     * @return type the source is selected by
+     */
+    QueueMetricsSourceType getType();
+
+    /**
+     * Requests the number of messages of the given queues without blocking the calling thread.
+     * Sources fetching all queues at once complete the futures of all queues from the same request.
+     *
+     * @param queues names of the queues to query
+     * @return map with queue names as key and futures completing with their number of messages as value
+     */
+    Map<String, CompletableFuture<QueueMetrics>> request(Collection<String> queues);
+
+    /**
+     * Splits the response of a request for all queues into a future per queue. The future of a queue missing in the
+     * response completes exceptionally.
+     *
+     * @param response future completing with the number of messages of all queues
+     * @param queues   names of the queues to split into
+     * @return map with queue names as key and futures completing with their number of messages as value
+     */
+    static Map<String, CompletableFuture<QueueMetrics>> split(
+            final CompletableFuture<Map<String, QueueMetrics>> response,
+            final Collection<String> queues) {
+        final Map<String, CompletableFuture<QueueMetrics>> result = new HashMap<>();
+        queues.forEach(queue -> result.put(queue, response.thenApply(all -> {
+            final QueueMetrics metrics = all.get(queue);
+            if (metrics == null) {
+                throw new IllegalStateException("No metrics for queue " + queue);
+            }
+            return metrics;
+        })));
+        return result;
+    }
+
+}
@@ -1,78 +1,85 @@
 package com.schoeniu.maha.service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.collections4.MapUtils;
 import org.springframework.stereotype.Service;
 
-import com.schoeniu.maha.config.properties.ScalingConfigProperties;
-import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
-import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.Topology;
 
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Service for calculating rates of message consumption
  */
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Service
 public class RateService {
 
-    private final ScalingConfigProperties scalingConfig;
+    private final ConsumptionRateEstimator consumptionRateEstimator;
+    private final ProductionRatioEstimator productionRatioEstimator;
 
     /**
-     * Calculates recursively the rates how many messages services will need to consume.
-     *
-     * @param queue      origin queue name
-     * @param originRate rate how fast the consumption from the origin queue is
-     * @return map with queue names as key and rate to consume as value
+     * Names of the meshes whose learned relative production rates currently let a cycle grow without bound.
      */
-    public Map<String, Float> calcFollowUpQueueRates(final String queue, final float originRate) {
-        Map<String, Float> result = new HashMap<>();
-        if (scalingConfig.getQueuesConsumedFrom()
-                         .containsKey(queue)) {
-            calcFollowUpQueueRatesRecursive(scalingConfig.getQueuesConsumedFrom()
-                                                         .get(queue), originRate, result);
-        }
-        return result;
-    }
+    private final Set<String> divergentMeshes = ConcurrentHashMap.newKeySet();
 
-    private void calcFollowUpQueueRatesRecursive(final ConsumerServiceConfig consumer,
-                                                 final float rateToConsume,
-                                                 final Map<String, Float> result) {
-        if (MapUtils.isEmpty(consumer.getQueuesProducedTo())) {
-            return;
+    /**
+     * Calculates the total rates how many messages services will need to consume from each queue, being the origin
+     * rates plus all follow-up rates they cause, for all origin queues together in one pass over the compiled
+     * topology. Falls back to the configured relative production rates if the learned ones let the rates of a cycle
+     * grow without bound.
+     *
+     * @param mesh        mesh of the queues
+     * @param originRates rates per queue ordinal, which have to be consumed from the queues themselves
+     * @param edgeRates   scratch space for the relative production rates per edge ordinal
+     * @param totalRates  output of the total rates per queue ordinal
+     */
+    public void calcTotalQueueRates(final Mesh mesh,
+                                    final float[] originRates,
+                                    final float[] edgeRates,
+                                    final float[] totalRates) {
+        final Topology topology = mesh.getTopology();
+        for (int edge = 0; edge < edgeRates.length; edge++) {
+            edgeRates[edge] = productionRatioEstimator.getRelativeProductionRate(mesh,
+                                                                                 topology.getQueue(topology.getEdgeSource(
+                                                                                         edge)),
+                                                                                 topology.getQueue(topology.getEdgeTarget(
+                                                                                         edge)),
+                                                                                 topology.getConfiguredEdgeRate(edge));
         }
-        for (Map.Entry<String, ProducerQueueConfig> entry : consumer.getQueuesProducedTo()
-                                                                    .entrySet()) {
-            String producedQueue = entry.getKey();
-            float producedToRate = entry.getValue()
-                                        .getRelativeProductionRate() * rateToConsume;
-            result.put(producedQueue, producedToRate + result.getOrDefault(entry.getKey(), 0F));
-            if (scalingConfig.getQueuesConsumedFrom()
-                             .containsKey(producedQueue)) {
-                calcFollowUpQueueRatesRecursive(scalingConfig.getQueuesConsumedFrom()
-                                                             .get(producedQueue), producedToRate, result);
+        if (topology.converges(edgeRates)) {
+            if (divergentMeshes.remove(mesh.getName())) {
+                log.info("Learned relative production rates of mesh {} converge again.", mesh.getName());
+            }
+        } else {
+            if (divergentMeshes.add(mesh.getName())) {
+                log.warn("Learned relative production rates of mesh {} let a cycle diverge, using the configured ones.",
+                         mesh.getName());
+            }
+            for (int edge = 0; edge < edgeRates.length; edge++) {
+                edgeRates[edge] = topology.getConfiguredEdgeRate(edge);
             }
         }
+        topology.propagate(originRates, edgeRates, totalRates);
     }
 
     /**
-     * Get configured consumption rate of a service on a queue
+     * Get consumption rate per pod of the service consuming a queue.
+     * Uses the learned rate if available and falls back to the configured rate while the estimate is cold.
      *
-     * @param queue   queue name to consume from
-     * @param service service name which consumes
-     * @return configured consumption rate
+     * @param mesh  mesh of the queue
+     * @param queue queue ordinal to consume from
+     * @return consumption rate per pod
      */
-    public float getConsumptionRate(final String queue, final String service) {
-        ConsumerServiceConfig config = scalingConfig.getQueuesConsumedFrom()
-                                                    .get(queue);
-        assert config != null && config.getServiceName()
-                                       .equals(service);
-        return config.getConsumptionRate();
+    public float getConsumptionRate(final Mesh mesh, final int queue) {
+        final Topology topology = mesh.getTopology();
+        return consumptionRateEstimator.getLearnedRate(mesh,
+                                                       topology.getQueue(queue),
+                                                       topology.getConfiguredConsumptionRate(queue));
     }
 
 }
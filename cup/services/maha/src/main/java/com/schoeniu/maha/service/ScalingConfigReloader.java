@@ -0,0 +1,133 @@
+package com.schoeniu.maha.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service reloading the scaling config from its config map at runtime, without restarting MAHA.
+ * Every new version of the config map is bound and compiled here, outside the schedule iterations, and handed to the
+ * {@link MeshService} to be swapped in before the next iteration. Invalid versions are rejected and the current
+ * config is kept. Only the config map itself is reloaded, values overridden by environment variables are not applied.
+ */
+@Slf4j
+@Service
+public class ScalingConfigReloader {
+
+    private static final String PREFIX = "scaling-config";
+
+    private final K8sApi k8SApi;
+    private final MeshService meshService;
+    private final ConsumptionRateEstimator consumptionRateEstimator;
+    private final ProductionRatioEstimator productionRatioEstimator;
+    private final boolean enabled;
+    private final String namespace;
+    private final String configMapName;
+    private final String dataKey;
+
+    private String loadedResourceVersion;
+
+    public ScalingConfigReloader(final K8sApi k8SApi,
+                                 final MeshService meshService,
+                                 final ConsumptionRateEstimator consumptionRateEstimator,
+                                 final ProductionRatioEstimator productionRatioEstimator,
+                                 @Value("${config-reload.enabled:false}") final boolean enabled,
+                                 @Value("${kubernetes.config.namespace}") final String namespace,
+                                 @Value("${config-reload.configMapName:scaling-config.yaml}") final String configMapName,
+                                 @Value("${config-reload.dataKey:application-k8s.yaml}") final String dataKey) {
+        this.k8SApi = k8SApi;
+        this.meshService = meshService;
+        this.consumptionRateEstimator = consumptionRateEstimator;
+        this.productionRatioEstimator = productionRatioEstimator;
+        this.enabled = enabled;
+        this.namespace = namespace;
+        this.configMapName = configMapName;
+        this.dataKey = dataKey;
+    }
+
+    /**
+     * Checks the config map for a new version and prepares it to be swapped in. The first version read is loaded
+     * as well, as the file mounted at startup may lag behind the config map.
+     */
+    @Scheduled(fixedDelayString = "${config-reload.intervalMillis:10000}")
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        final Optional<V1ConfigMap> configMap;
+        try {
+            configMap = k8SApi.readConfigMap(namespace, configMapName);
+        } catch (ApiException e) {
+            log.warn("Reading config map {} failed: {} {}", configMapName, e.getCode(), e.getResponseBody());
+            return;
+        }
+        if (configMap.isEmpty()) {
+            log.warn("Config map {} does not exist.", configMapName);
+            return;
+        }
+        final String resourceVersion = Objects.requireNonNull(configMap.get()
+                                                                       .getMetadata())
+                                              .getResourceVersion();
+        if (Objects.equals(resourceVersion, loadedResourceVersion)) {
+            return;
+        }
+        // an invalid version is not retried, only the next version is
+        loadedResourceVersion = resourceVersion;
+
+        final Map<String, String> data = configMap.get()
+                                                  .getData();
+        final String yaml = data == null ? null : data.get(dataKey);
+        if (yaml == null) {
+            log.error("Rejected version {} of config map {}, it has no key {}.", resourceVersion, configMapName, dataKey);
+            return;
+        }
+        try {
+            final Set<String> changedQueues = meshService.prepareReload(parse(yaml));
+            consumptionRateEstimator.reset(changedQueues);
+            productionRatioEstimator.reset(changedQueues);
+            log.info("Loaded version {} of config map {}, changed queues: {}",
+                     resourceVersion,
+                     configMapName,
+                     changedQueues);
+        } catch (IOException | RuntimeException e) {
+            log.error("Rejected version {} of config map {}: {}", resourceVersion, configMapName, e.getMessage());
+        }
+    }
+
+    /**
+     * Binds the scaling config of a yaml document.
+     *
+     * @param yaml yaml document with the scaling config under scaling-config
+     * @return bound scaling config
+     * @throws IOException if the yaml could not be parsed
+     * @throws IllegalStateException if the yaml contains no scaling config
+     */
+    static ScalingConfigProperties parse(final String yaml) throws IOException {
+        final List<PropertySource<?>> sources =
+                new YamlPropertySourceLoader().load(PREFIX, new ByteArrayResource(yaml.getBytes(StandardCharsets.UTF_8)));
+        return new Binder(ConfigurationPropertySources.from(sources)).bind(PREFIX, ScalingConfigProperties.class)
+                                                                     .orElseThrow(() -> new IllegalStateException(
+                                                                             "No " + PREFIX + " found"));
+    }
+
+}
@@ -1,52 +1,178 @@
 package com.schoeniu.maha.service;
 
-import java.util.Date;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
 import com.schoeniu.maha.api.K8sApi;
-import com.schoeniu.maha.api.SqsApi;
-import com.schoeniu.maha.config.properties.ScalingConfigProperties;
-import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.DownscaleConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.PodBudgetConfig;
 import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.VerticalScalingConfig;
 import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.ScalingState;
+import com.schoeniu.maha.topology.Topology;
+import com.schoeniu.maha.util.SlidingWindowMax;
 
-import lombok.AllArgsConstructor;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Main ScalingSchedule to continuously run the scaling algorithm
  */
 @Slf4j
-@AllArgsConstructor
+@RequiredArgsConstructor
 @Service
 public class ScalingSchedule {
 
-    private MetricManager metricManager;
-    private ScalingConfigProperties scalingConfig;
-    private SqsApi sqsApi;
-    private K8sApi k8SApi;
-    private RateService rateService;
+    /**
+     * Minimal share of the target drain time which is left for draining a queue after new pods are started.
+     */
+    private static final float MIN_DRAIN_WINDOW_FRACTION = 0.25F;
+
+    /**
+     * Services requiring less than this fraction of one pod are not scaled up for it.
+     */
+    private static final float MIN_REQUIRED_CAPACITY = 0.25F;
+
+    private static final String SUPPRESSED_BY_STABILIZATION = "stabilization";
+    private static final String SUPPRESSED_BY_PERIOD = "period";
+    private static final String SUPPRESSED_BY_RECOMMENDATION_WINDOW = "recommendation_window";
+
+    /**
+     * Rounding error of summed capacity fractions tolerated before another pod is required.
+     */
+    private static final float CAPACITY_TOLERANCE = 0.0001F;
+
+    private final MetricManager metricManager;
+    private final QueueDepthPoller queueDepthPoller;
+    private final K8sApi k8SApi;
+    private final RateService rateService;
+    private final QueueForecaster queueForecaster;
+    private final PodStartupEstimator podStartupEstimator;
+    private final WaitTimeEstimator waitTimeEstimator;
+    private final PodBudgetAllocator podBudgetAllocator;
+    private final ConcurrencyScaler concurrencyScaler;
+    private final MeshService meshService;
+    private final LeaderElectionService leaderElectionService;
+    private final AdaptiveTickTrigger adaptiveTickTrigger;
+    private final Clock clock;
+
+    /**
+     * Time a schedule iteration waits for the meshes evaluated concurrently, before it leaves slow meshes
+     * running in the background and returns. Should be below the minimum tick interval.
+     */
+    @Value("${scheduling.mesh.waitMillis:200}")
+    private long meshScheduleWaitMillis;
 
-    private Map<String, Date> upscaleTimes;
+    private final ExecutorService meshExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory(
+            "mesh-schedule-"));
+    private final Map<String, Future<?>> runningMeshSchedules = new ConcurrentHashMap<>();
 
     /**
-     * Schedule method to execute the scaling algorithm
+     * Schedule method to execute the scaling algorithm, triggered by the {@link AdaptiveTickTrigger}.
+     * Meshes are evaluated concurrently, so a slow API call in one mesh does not delay the decisions of the others.
+     * A mesh whose previous iteration is still running is skipped. A reloaded scaling config is swapped in before,
+     * unless the previous iteration of a mesh is still running, as it still modifies the state to carry over.
      */
-    @Scheduled(cron = "* * * * * *")
     public void schedule() {
-        log.info("================= Start schedule =================");
+        if (runningMeshSchedules.values()
+                                .stream()
+                                .allMatch(Future::isDone)) {
+            meshService.applyReload();
+        } else {
+            log.debug("Previous schedule of a mesh is still running, deferring a reloaded scaling config.");
+        }
+        final Collection<Mesh> meshes = meshService.getMeshes();
+        if (meshes.size() == 1) {
+            schedule(meshes.iterator()
+                           .next());
+            return;
+        }
+        final long deadline = System.currentTimeMillis() + meshScheduleWaitMillis;
+        final Map<String, Future<?>> submitted = new HashMap<>();
+        for (Mesh mesh : meshes) {
+            final Future<?> previous = runningMeshSchedules.get(mesh.getName());
+            if (previous != null && !previous.isDone()) {
+                log.warn("Previous schedule of mesh {} is still running, skipping it.", mesh.getName());
+                continue;
+            }
+            final Future<?> future = meshExecutor.submit(() -> schedule(mesh));
+            runningMeshSchedules.put(mesh.getName(), future);
+            submitted.put(mesh.getName(), future);
+        }
+        submitted.forEach((mesh, future) -> {
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Schedule of mesh {} did not finish within {} ms.", mesh, meshScheduleWaitMillis);
+            } catch (ExecutionException e) {
+                log.error("Schedule of mesh {} failed.", mesh, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread()
+                      .interrupt();
+            }
+        });
+    }
+
+    /**
+     * Executes the scaling algorithm for a single mesh while holding its lock, so the activation of services
+     * scaled to zero does not modify its state concurrently.
+     *
+     * @param mesh mesh to scale
+     */
+    private void schedule(final Mesh mesh) {
+        mesh.getLock()
+            .lock();
+        try {
+            evaluate(mesh);
+        } finally {
+            mesh.getLock()
+                .unlock();
+        }
+    }
 
-        final StrategyConfig strategy = scalingConfig.getStrategy();
+    /**
+     * Executes the scaling algorithm for a single mesh. Works on the preallocated arrays of the mesh indexed by
+     * the ordinals of its topology, so apart from polling the queues and reading the deployments nothing is
+     * allocated in steady state and the cost grows linearly with the size of the topology.
+     *
+     * @param mesh mesh to scale
+     */
+    private void evaluate(final Mesh mesh) {
+        log.debug("================= Start schedule of mesh {} =================", mesh.getName());
+
+        final StrategyConfig strategy = mesh.getStrategy();
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        final long now = clock.millis();
 
         //query and export number of messages in queues metrics
-        scalingConfig.getQueuesConsumedFrom()
-                     .keySet()
-                     .forEach(queue -> metricManager.setMessagesInQueueGauge(queue, sqsApi.getNumberOfMessages(queue)));
+        final Map<String, Integer> depths = queueDepthPoller.poll(mesh.getName(),
+                                                                  strategy.getQueueMetricsSource(),
+                                                                  mesh.getQueuesConsumedFrom()
+                                                                      .keySet());
+        adaptiveTickTrigger.recordQueueDepths(depths);
+        updateDepths(mesh, depths, now);
 
         //exit if scaling is disabled
         if (!strategy.isScalingEnabled()) {
@@ -55,152 +181,855 @@ public class ScalingSchedule {
         }
 
         // calculate origin queue rates which need to be consumed per minute
-        final Map<String, Float> originQueueRates = new HashMap<>();
-        for (Map.Entry<String, ConsumerServiceConfig> entry : scalingConfig.getQueuesConsumedFrom()
-                                                                           .entrySet()) {
+        calcOriginRates(mesh);
+
+        // calculate total queue rates including follow-up rates if follow-up scaling is enabled
+        if (strategy.isFollowUpScalingEnabled()) {
+            rateService.calcTotalQueueRates(mesh, state.getOriginRates(), state.getEdgeRates(), state.getTotalRates());
+        } else {
+            System.arraycopy(state.getOriginRates(), 0, state.getTotalRates(), 0, topology.getNumberOfQueues());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Origin rates: {}", formatQueueValues(topology, state.getOriginRates()));
+            log.debug("Total rates: {}", formatQueueValues(topology, state.getTotalRates()));
+        }
+
+        // determine number of pods to scale to
+        calcRequiredPods(mesh);
+        readCurrentPods(mesh);
+        calcConcurrency(mesh);
+        podBudgetAllocator.allocate(mesh);
+        recordObservedUpscales(mesh, now);
+        calcTargetPods(mesh, now);
+        if (strategy.isExportMetrics()) {
+            exportDecision(mesh);
+        }
+
+        //execute scaling, standby instances only keep their state warm
+        if (!leaderElectionService.isLeader()) {
+            log.debug("Standby instance, not executing scaling of mesh {}.", mesh.getName());
+            return;
+        }
+        executeScaling(mesh, now);
+        log.debug("================= End schedule of mesh {} =================", mesh.getName());
+    }
+
+    /**
+     * Stores the polled number of messages per queue, exports them and adds them to the forecasts. The consumers of
+     * queues whose number of messages is unknown are flagged, so they are not scaled in this iteration.
+     *
+     * @param mesh   mesh of the queues
+     * @param depths polled number of messages per queue name
+     * @param now    current time in millis
+     */
+    private void updateDepths(final Mesh mesh, final Map<String, Integer> depths, final long now) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        Arrays.fill(state.getUnknownDepths(), false);
+        final boolean forecasting = strategy.getForecast()
+                                            .isEnabled() || strategy.getPodStartup()
+                                                                    .isEnabled();
+        for (int queue = 0; queue < topology.getNumberOfQueues(); queue++) {
+            final Integer messages = depths.get(topology.getQueue(queue));
+            // queues which are only produced to are not polled, consumed ones are left out while unknown
+            if (messages == null) {
+                if (topology.getConsumerService(queue) >= 0) {
+                    state.getUnknownDepths()[topology.getConsumerService(queue)] = true;
+                }
+                continue;
+            }
+            state.getDepths()[queue] = messages;
+            if (state.getDepthGauges()[queue] == null) {
+                state.getDepthGauges()[queue] = metricManager.getMessagesInQueueGauge(mesh.getName(),
+                                                                                      topology.getQueue(queue));
+            }
+            state.getDepthGauges()[queue].setValue((float) messages);
+            if (forecasting) {
+                queueForecaster.record(mesh,
+                                       topology.getQueue(queue),
+                                       now,
+                                       messages,
+                                       getForecastHorizonMillis(mesh, queue));
+            }
+        }
+    }
+
+    /**
+     * Calculates the rates which need to be consumed from every queue, so it is drained within the target time.
+     *
+     * @param mesh mesh of the queues
+     */
+    private void calcOriginRates(final Mesh mesh) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        final float[] originRates = state.getOriginRates();
+        for (int queue = 0; queue < topology.getNumberOfQueues(); queue++) {
             //skip queues without consumer
-            if (StringUtils.isBlank(entry.getValue()
-                                         .getServiceName())) {
+            if (topology.getConsumerService(queue) < 0) {
+                originRates[queue] = 0;
                 continue;
             }
-            final String queue = entry.getKey();
-            if (originQueueRates.containsKey(queue)) {
-                throw new IllegalStateException("Queues must not be defined twice");
+            float messages = state.getDepths()[queue];
+            if (strategy.getForecast()
+                        .isEnabled()) {
+                // size for the load expected once new pods are started, but never below the current load
+                messages = Math.max(messages,
+                                    queueForecaster.getForecast(topology.getQueue(queue),
+                                                                getForecastHorizonMillis(mesh, queue)));
+            }
+            if (strategy.getPodStartup()
+                        .isEnabled()) {
+                originRates[queue] = calcStartupAwareRate(mesh, queue, messages);
+            } else if (hasWaitTimeObjective(mesh, queue)) {
+                originRates[queue] = messages / getDrainMinutes(mesh, queue);
+            } else {
+                originRates[queue] = messages * strategy.getQueueDecreasePerMinute();
             }
-            float messagesToConsumePerMinute =
-                    metricManager.getCurrentMessageInQueue(queue) * strategy.getQueueDecreasePerMinute();
-            originQueueRates.put(queue, messagesToConsumePerMinute);
         }
-        log.info("Origin rates: {}", originQueueRates);
+    }
 
-        // calculate follow-up queue rates if follow-up scaling is enabled
-        final Map<String, Float> followUpQueueRates = new HashMap<>();
-        if (strategy.isFollowUpScalingEnabled()) {
-            originQueueRates.forEach((queue, rate) -> addMap(followUpQueueRates,
-                                                             rateService.calcFollowUpQueueRates(queue, rate)));
-            log.info("Follow up rates: {}", followUpQueueRates);
-        } else {
-            log.info("Follow up scaling disabled.");
+    /**
+     * Calculates how many pods every service needs to consume the total rates of all queues it consumes from.
+     * The threads of a pod share its resources, so the capacity of a pod is a vector of consumption rates over the
+     * queues it consumes and the service needs as many pods as the summed fractions of that capacity demanded by
+     * all of its queues.
+     * Package-private for the benchmarks.
+     *
+     * @param mesh mesh of the services
+     */
+    void calcRequiredPods(final Mesh mesh) {
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        final float[] requiredCapacities = state.getRequiredCapacities();
+        final int[] requiredPods = state.getRequiredPods();
+        Arrays.fill(requiredCapacities, 0);
+        for (int queue = 0; queue < topology.getNumberOfQueues(); queue++) {
+            final int service = topology.getConsumerService(queue);
+            if (service < 0) {
+                continue;
+            }
+            final float requiredCapacity = calculateRequiredCapacity(mesh, queue, state.getTotalRates()[queue]);
+            if (log.isDebugEnabled()) {
+                log.debug("Service {} requires {} of a pod for queue {}",
+                          topology.getService(service),
+                          requiredCapacity,
+                          topology.getQueue(queue));
+            }
+            requiredCapacities[service] += requiredCapacity;
+        }
+        for (int service = 0; service < requiredPods.length; service++) {
+            requiredPods[service] = requiredCapacities[service] < MIN_REQUIRED_CAPACITY
+                    ? 0
+                    : (int) Math.ceil(requiredCapacities[service] - CAPACITY_TOLERANCE);
         }
-        // calculate total queue rates
-        final Map<String, Float> totalRates = new HashMap<>(originQueueRates);
-        addMap(totalRates, followUpQueueRates);
-        log.info("Total rates: {}", totalRates);
+    }
 
-        // determine number of pods to scale to
-        final Map<String, Integer> scalingUpMap = new HashMap<>();
-        final Map<String, Integer> scalingDownMap = new HashMap<>();
-        final Map<String, Integer> currentPods = k8SApi.getReplicasPerDeployment();
-        mapRatesToRequiredPods(totalRates).forEach((service, numberOfRequiredPods) -> {
-            int numberOfCurrentPods = currentPods.get(service);
-
-            Date lastTimeConsumerScaled = upscaleTimes.getOrDefault(service, new Date(0));
-            long timeSinceLastUpscale = new Date().getTime() - lastTimeConsumerScaled.getTime();
-            long waitTimeAfterLastUpscale = strategy.getDownScaleStabilizationSeconds() * 1000L;
-            if (numberOfCurrentPods > 1 && numberOfRequiredPods == 0) {
+    /**
+     * Vertical scaling stage: decides how many listener threads per queue each pod of the vertically scaled services
+     * runs and how many pods are required with them. The threads of a pod are raised up to the max concurrency
+     * before pods are added, and lowered before pods are removed, as the current pods get the fewest threads
+     * consuming the required capacity.
+     *
+     * @param mesh mesh of the services
+     */
+    private void calcConcurrency(final Mesh mesh) {
+        final VerticalScalingConfig vertical = mesh.getStrategy()
+                                                   .getVertical();
+        if (!vertical.isEnabled()) {
+            return;
+        }
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            if (!vertical.getServices()
+                         .contains(topology.getService(service))) {
+                continue;
+            }
+            final float requiredCapacity = state.getRequiredCapacities()[service];
+            if (requiredCapacity < MIN_REQUIRED_CAPACITY) {
+                state.getConcurrency()[service] = 1;
+                continue;
+            }
+            final int currentPods = Math.max(state.getCurrentPods()[service], 1);
+            final int concurrency = Math.min(Math.max((int) Math.ceil(requiredCapacity / currentPods
+                                                                      - CAPACITY_TOLERANCE), 1),
+                                             vertical.getMaxConcurrency());
+            state.getConcurrency()[service] = concurrency;
+            state.getRequiredPods()[service] = (int) Math.ceil(requiredCapacity / concurrency - CAPACITY_TOLERANCE);
+            if (log.isDebugEnabled()) {
+                log.debug("Service {} requires {} pods with {} listener threads per queue",
+                          topology.getService(service),
+                          state.getRequiredPods()[service],
+                          concurrency);
+            }
+        }
+    }
+
+    /**
+     * Reads the current number of pods of every service of a mesh from the deployment cache. In shadow mode the
+     * pods set by the active autoscaler are kept as actual pods, and the pods MAHA would have scaled to are used as
+     * current pods, starting from the actual pods when a deployment is first seen.
+     *
+     * @param mesh mesh of the services
+     */
+    private void readCurrentPods(final Mesh mesh) {
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        final boolean shadowMode = mesh.getStrategy()
+                                       .isShadowMode();
+        final int[] currentPods = state.getCurrentPods();
+        final Map<String, Integer> replicas = k8SApi.getReplicasPerDeployment(mesh.getNamespace());
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            final Integer pods = replicas.get(topology.getService(service));
+            currentPods[service] = pods == null ? -1 : pods;
+            if (!shadowMode) {
+                state.getShadowPods()[service] = -1;
+                continue;
+            }
+            state.getActualPods()[service] = currentPods[service];
+            if (currentPods[service] >= 0) {
+                if (state.getShadowPods()[service] < 0) {
+                    state.getShadowPods()[service] = currentPods[service];
+                }
+                currentPods[service] = state.getShadowPods()[service];
+            }
+        }
+    }
+
+    /**
+     * Decides to how many pods every service is scaled, -1 if it is not scaled.
+     *
+     * @param mesh mesh of the services
+     * @param now  current time in millis
+     */
+    private void calcTargetPods(final Mesh mesh, final long now) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        updateScaleToZeroServices(mesh);
+        final long waitTimeAfterLastUpscale = strategy.getDownScaleStabilizationSeconds() * 1000L;
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            state.getTargetPods()[service] = -1;
+            final int numberOfCurrentPods = state.getCurrentPods()[service];
+            if (numberOfCurrentPods < 0) {
+                log.warn("Deployment of service {} is not known (yet), skipping it.", topology.getService(service));
+                continue;
+            }
+            if (state.getUnknownDepths()[service]) {
+                log.warn("Number of messages of a queue of service {} is unknown, skipping it.",
+                         topology.getService(service));
+                continue;
+            }
+            final int numberOfRequiredPods = state.getRequiredPods()[service];
+
+            // services which may scale to zero are kept at one pod as long as messages are on their way to them
+            final boolean scaleToZero = state.getScaleToZero()[service];
+            final boolean pendingMessages = scaleToZero && hasPendingMessages(mesh, service);
+            final int minimumPods = scaleToZero && !pendingMessages ? 0 : 1;
+            final int targetPods = pendingMessages ? Math.max(numberOfRequiredPods, 1) : numberOfRequiredPods;
+
+            final long lastUpscale = state.getUpscaleTimes()[service];
+            final long timeSinceLastUpscale = lastUpscale == ScalingState.NEVER ? Long.MAX_VALUE : now - lastUpscale;
+            if (strategy.getDownscale()
+                        .isEnabled()) {
+                final int neededPods = Math.max(targetPods, minimumPods);
+                final int recommendedPods = recordRecommendation(mesh, service, neededPods, now);
+                if (numberOfCurrentPods > recommendedPods) {
+                    if (timeSinceLastUpscale < waitTimeAfterLastUpscale) {
+                        suppressDownscale(mesh, service, SUPPRESSED_BY_STABILIZATION);
+                    } else {
+                        state.getTargetPods()[service] = calcSteppedDownscale(mesh, service, recommendedPods, now);
+                        if (state.getTargetPods()[service] < 0) {
+                            suppressDownscale(mesh, service, SUPPRESSED_BY_PERIOD);
+                        }
+                    }
+                    continue;
+                }
+                if (numberOfCurrentPods > neededPods) {
+                    suppressDownscale(mesh, service, SUPPRESSED_BY_RECOMMENDATION_WINDOW);
+                }
+            } else if (numberOfCurrentPods > minimumPods && numberOfRequiredPods == 0) {
                 if (timeSinceLastUpscale >= waitTimeAfterLastUpscale) {
-                    putInMap(service, numberOfRequiredPods + 1, scalingDownMap);
-                } else {
-                    log.info("Ignoring scaling service {} current pods are {}, required are {}, "
-                             + "because time since last upscale is {} seconds, which is less than configured {}.",
-                             service,
-                             numberOfCurrentPods,
-                             numberOfRequiredPods,
-                             timeSinceLastUpscale / 1000L,
-                             waitTimeAfterLastUpscale / 1000L);
+                    state.getTargetPods()[service] = minimumPods;
+                    continue;
                 }
-            } else if (numberOfCurrentPods < numberOfRequiredPods) {
-                putInMap(service, numberOfRequiredPods, scalingUpMap);
+                suppressDownscale(mesh, service, SUPPRESSED_BY_STABILIZATION);
+                if (log.isDebugEnabled()) {
+                    log.debug("Ignoring scaling service {} current pods are {}, required are {}, "
+                              + "because time since last upscale is {} seconds, which is less than configured {}.",
+                              topology.getService(service),
+                              numberOfCurrentPods,
+                              numberOfRequiredPods,
+                              timeSinceLastUpscale / 1000L,
+                              waitTimeAfterLastUpscale / 1000L);
+                }
+                continue;
             }
-        });
+            if (numberOfCurrentPods < targetPods) {
+                final int cappedPods = Math.min(targetPods, strategy.getMaxNumberOfPods());
+                if (cappedPods != numberOfCurrentPods) {
+                    state.getTargetPods()[service] = cappedPods;
+                }
+                if (targetPods > strategy.getMaxNumberOfPods()) {
+                    // a capped service would be upscaled if it could, so it is stabilized as if it just was
+                    state.getUpscaleTimes()[service] = now;
+                }
+            }
+        }
+        limitToPodBudget(mesh);
+    }
 
-        //execute scaling
-        scalingUpMap.forEach((service, scale) -> {
-            assert scale != null;
-            int safeScale = Math.min(scale, strategy.getMaxNumberOfPods());
-            k8SApi.scaleDeployment(service, safeScale);
-            upscaleTimes.put(service, new Date());
-            log.info("{} scaled UP to {}", service, safeScale);
-        });
-        scalingDownMap.forEach((service, scale) -> {
-            assert scale != null;
-            k8SApi.scaleDeployment(service, scale);
-            log.info("{} scaled DOWN to {}", service, scale);
-        });
-        log.info("================= End schedule =================\n");
+    /**
+     * Scales the services above their allocated pods down to them while the pods of the mesh after this iteration
+     * would exceed its pod budget. The budget is a hard limit, so neither the downscale stabilization nor the
+     * downscale behaviour keep pods which do not fit into it.
+     *
+     * @param mesh mesh of the services
+     */
+    private void limitToPodBudget(final Mesh mesh) {
+        final PodBudgetConfig budget = mesh.getStrategy()
+                                           .getPodBudget();
+        if (!budget.isEnabled()) {
+            return;
+        }
+        final ScalingState state = mesh.getState();
+        final int services = mesh.getTopology()
+                                 .getNumberOfServices();
+        float cost = 0;
+        for (int service = 0; service < services; service++) {
+            cost += state.getPodCosts()[service] * Math.max(getPlannedPods(state, service), 0);
+        }
+        if (cost <= budget.getTotal()) {
+            return;
+        }
+        for (int service = 0; service < services; service++) {
+            final int allocatedPods = state.getAllocatedPods()[service];
+            if (state.getUnknownDepths()[service] || getPlannedPods(state, service) <= allocatedPods) {
+                continue;
+            }
+            state.getTargetPods()[service] = allocatedPods == state.getCurrentPods()[service] ? -1 : allocatedPods;
+        }
+    }
+
+    /**
+     * @return number of pods a service has after this iteration, -1 if its deployment is not known
+     */
+    private static int getPlannedPods(final ScalingState state, final int service) {
+        final int targetPods = state.getTargetPods()[service];
+        return targetPods >= 0 ? targetPods : state.getCurrentPods()[service];
+    }
+
+    /**
+     * Counts a schedule iteration in which a service keeps more pods than it needs if metrics are exported.
+     *
+     * @param mesh    mesh of the service
+     * @param service service ordinal
+     * @param reason  what suppressed the downscale
+     */
+    private void suppressDownscale(final Mesh mesh, final int service, final String reason) {
+        if (mesh.getStrategy()
+                .isExportMetrics()) {
+            metricManager.incSuppressedDownscales(mesh.getName(),
+                                                  mesh.getTopology()
+                                                      .getService(service),
+                                                  reason);
+        }
+    }
+
+    /**
+     * Exports the rates per queue and the pods per service the scaling decision of this iteration is based on.
+     * A service which is not scaled in this iteration keeps its current pods as target.
+     *
+     * @param mesh mesh of the decision
+     */
+    private void exportDecision(final Mesh mesh) {
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        for (int queue = 0; queue < topology.getNumberOfQueues(); queue++) {
+            final String queueName = topology.getQueue(queue);
+            if (state.getOriginRateGauges()[queue] == null) {
+                state.getOriginRateGauges()[queue] = metricManager.getOriginRateGauge(mesh.getName(), queueName);
+                state.getFollowUpRateGauges()[queue] = metricManager.getFollowUpRateGauge(mesh.getName(), queueName);
+                state.getTotalRateGauges()[queue] = metricManager.getTotalRateGauge(mesh.getName(), queueName);
+            }
+            final float originRate = state.getOriginRates()[queue];
+            final float totalRate = state.getTotalRates()[queue];
+            state.getOriginRateGauges()[queue].setValue(originRate);
+            state.getFollowUpRateGauges()[queue].setValue(Math.max(0, totalRate - originRate));
+            state.getTotalRateGauges()[queue].setValue(totalRate);
+        }
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            final int currentPods = state.getCurrentPods()[service];
+            if (currentPods < 0) {
+                continue;
+            }
+            final String serviceName = topology.getService(service);
+            if (state.getRequiredPodsGauges()[service] == null) {
+                state.getRequiredPodsGauges()[service] = metricManager.getRequiredPodsGauge(mesh.getName(),
+                                                                                            serviceName);
+                state.getCurrentPodsGauges()[service] = metricManager.getCurrentPodsGauge(mesh.getName(),
+                                                                                          serviceName);
+                state.getTargetPodsGauges()[service] = metricManager.getTargetPodsGauge(mesh.getName(), serviceName);
+            }
+            final int targetPods = state.getTargetPods()[service];
+            state.getRequiredPodsGauges()[service].setValue(state.getRequiredPods()[service]);
+            state.getCurrentPodsGauges()[service].setValue(currentPods);
+            state.getTargetPodsGauges()[service].setValue(targetPods < 0 ? currentPods : targetPods);
+        }
     }
 
     /**
-     * Utility function which puts key and value in a map.
-     * If the key already exists the biggest value is put in the map.
+     * Adds the number of pods a service needs now to its recommendations.
      *
-     * @param key   key to add
-     * @param value value to add
-     * @param map   map to add key and value to
+     * @param mesh            mesh of the service
+     * @param service         service ordinal
+     * @param recommendedPods number of pods needed now
+     * @param now             current time in millis
+     * @return highest recommendation within the recommendation window
      */
-    private void putInMap(final String key, final Integer value, final Map<String, Integer> map) {
-        int val = value == null ? -1 : value;
-        map.put(key, Math.max(val, map.getOrDefault(key, -1)));
+    private int recordRecommendation(final Mesh mesh, final int service, final int recommendedPods, final long now) {
+        final SlidingWindowMax[] recommendations = mesh.getState()
+                                                       .getRecommendations();
+        final long windowMillis = mesh.getStrategy()
+                                      .getDownscale()
+                                      .getRecommendationWindowSeconds() * 1000L;
+        if (recommendations[service] == null) {
+            recommendations[service] = new SlidingWindowMax(windowMillis);
+        } else if (recommendations[service].getWindowMillis() != windowMillis) {
+            // the window was reloaded, the recommendations within the new window still count
+            recommendations[service] = recommendations[service].resize(windowMillis);
+        }
+        recommendations[service].add(now, recommendedPods);
+        return recommendations[service].getMax(now, recommendedPods);
     }
 
     /**
-     * Utility function for combining maps
+     * Calculates the next step of downscaling a service towards its recommendation. A service is downscaled at most
+     * once per period and by at most the configured number or percentage of its pods, so a burst arriving shortly
+     * after is still served by most of the warm pods.
      *
-     * @param originMap original map which receives new entries
-     * @param mapToAdd  map to add to the origin map
+     * @param mesh            mesh of the service
+     * @param service         service ordinal
+     * @param recommendedPods highest recommendation within the window
+     * @param now             current time in millis
+     * @return number of pods to scale to, -1 if the service is not downscaled in this iteration
      */
-    private void addMap(final Map<String, Float> originMap, final Map<String, Float> mapToAdd) {
-        mapToAdd.forEach((key, value) -> originMap.put(key, value + originMap.getOrDefault(key, 0F)));
+    private int calcSteppedDownscale(final Mesh mesh, final int service, final int recommendedPods, final long now) {
+        final DownscaleConfig downscale = mesh.getStrategy()
+                                              .getDownscale();
+        final ScalingState state = mesh.getState();
+        final long lastDownscale = state.getDownscaleTimes()[service];
+        if (lastDownscale != ScalingState.NEVER && now - lastDownscale < downscale.getPeriodSeconds() * 1000L) {
+            return -1;
+        }
+        final int currentPods = state.getCurrentPods()[service];
+        int maxStep = currentPods - recommendedPods;
+        if (downscale.getMaxPodsPerPeriod() > 0) {
+            maxStep = Math.min(maxStep, downscale.getMaxPodsPerPeriod());
+        }
+        if (downscale.getMaxPercentPerPeriod() > 0) {
+            maxStep = Math.min(maxStep,
+                               Math.max(1, (int) (currentPods * downscale.getMaxPercentPerPeriod() / 100F)));
+        }
+        return currentPods - maxStep;
     }
 
     /**
-     * Maps a map of queues and their rates which need to be consumed to a map of services and how man pods are needed.
+     * Scales every service with a target number of pods.
      *
-     * @param totalRates map of queues and their rates which need to be consumed
-     * @return map of services and how man pods are needed
+     * @param mesh mesh of the services
+     * @param now  current time in millis
      */
-    private Map<String, Integer> mapRatesToRequiredPods(final Map<String, Float> totalRates) {
-        Map<String, Integer> result = new HashMap<>();
-        totalRates.forEach((queue, rate) -> {
-            ConsumerServiceConfig consumerConfig = scalingConfig.getQueuesConsumedFrom()
-                                                                .get(queue);
-            if (consumerConfig == null || StringUtils.isBlank(consumerConfig.getServiceName())) {
+    private void executeScaling(final Mesh mesh, final long now) {
+        if (mesh.getStrategy()
+                .isShadowMode()) {
+            executeShadowScaling(mesh, now);
+            return;
+        }
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            final int targetPods = state.getTargetPods()[service];
+            if (targetPods < 0) {
+                continue;
+            }
+            k8SApi.scaleDeployment(mesh.getNamespace(), topology.getService(service), targetPods);
+            state.getActivatedFromZero()[service] = false;
+            recordScaling(mesh, service, state.getCurrentPods()[service], targetPods, now);
+            if (targetPods > state.getCurrentPods()[service]) {
+                log.info("{} scaled UP to {}", topology.getService(service), targetPods);
+            } else {
+                log.info("{} scaled DOWN to {}", topology.getService(service), targetPods);
+            }
+        }
+        concurrencyScaler.apply(mesh);
+    }
+
+    /**
+     * Records the scaling decisions of a mesh in shadow mode without scaling any deployment, so MAHA can be compared
+     * live against the autoscaler which actually scales the services. The target pods become the shadow pods of the
+     * next iteration, and the difference to the pods set by the active autoscaler is exported per service.
+     *
+     * @param mesh mesh of the services
+     * @param now  current time in millis
+     */
+    private void executeShadowScaling(final Mesh mesh, final long now) {
+        final Topology topology = mesh.getTopology();
+        final ScalingState state = mesh.getState();
+        for (int service = 0; service < topology.getNumberOfServices(); service++) {
+            final int actualPods = state.getActualPods()[service];
+            if (actualPods < 0) {
+                continue;
+            }
+            final int targetPods = state.getTargetPods()[service];
+            if (targetPods >= 0) {
+                recordScaling(mesh, service, state.getCurrentPods()[service], targetPods, now);
+                state.getShadowPods()[service] = targetPods;
+                log.info("{} would be scaled to {} (shadow mode)", topology.getService(service), targetPods);
+            }
+            final String serviceName = topology.getService(service);
+            if (state.getShadowActualPodsGauges()[service] == null) {
+                state.getShadowActualPodsGauges()[service] = metricManager.getShadowActualPodsGauge(mesh.getName(),
+                                                                                                    serviceName);
+                state.getShadowPodDifferenceGauges()[service] = metricManager.getShadowPodDifferenceGauge(
+                        mesh.getName(),
+                        serviceName);
+            }
+            state.getShadowActualPodsGauges()[service].setValue(actualPods);
+            state.getShadowPodDifferenceGauges()[service].setValue(state.getShadowPods()[service] - actualPods);
+        }
+    }
+
+    /**
+     * Fast path for activating services which are scaled to zero. Polls only the queues upstream of these
+     * services in short intervals between the schedule iterations and scales a service to one pod as soon as
+     * a message is on its way to it, without waiting for the next schedule iteration. Every mesh is polled in its
+     * own activation interval, and skipped while a schedule iteration of it is running, which handles the
+     * activation itself.
+     */
+    @Scheduled(fixedDelayString = "${scheduling.activation.intervalMillis:50}")
+    public void activateScaledToZeroServices() {
+        if (!leaderElectionService.isLeader()) {
+            return;
+        }
+        meshService.getMeshes()
+                   .forEach(mesh -> {
+                       if (!mesh.getLock()
+                                .tryLock()) {
+                           return;
+                       }
+                       try {
+                           activateScaledToZeroServices(mesh);
+                       } finally {
+                           mesh.getLock()
+                               .unlock();
+                       }
+                   });
+    }
+
+    private void activateScaledToZeroServices(final Mesh mesh) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final ScalingState state = mesh.getState();
+        final List<String> scaleToZeroServices = strategy.getScaleToZero()
+                                                         .getServices();
+        // in shadow mode the schedule iterations keep the shadow pods of idle services at one pod instead
+        if (!strategy.isScalingEnabled() || strategy.isShadowMode() || scaleToZeroServices.isEmpty()) {
+            return;
+        }
+        final long now = clock.millis();
+        if (state.getLastActivationPoll() != ScalingState.NEVER
+            && now - state.getLastActivationPoll() < strategy.getScaleToZero()
+                                                             .getActivationPollMillis()) {
+            return;
+        }
+        state.setLastActivationPoll(now);
+        final Map<String, Integer> currentPods = k8SApi.getReplicasPerDeployment(mesh.getNamespace());
+        final Topology topology = mesh.getTopology();
+        final Map<Integer, Set<String>> idleServices = new HashMap<>();
+        scaleToZeroServices.forEach(service -> {
+            final int serviceIndex = topology.getServiceIndex(service);
+            if (serviceIndex < 0) {
                 return;
             }
-            String service = consumerConfig.getServiceName();
-            int numberOfRequiredPods = calculateNumberOfRequiredPods(queue, service, rate);
-            log.info("Service {} requires {} pods for queue {}",
-                     service,
-                     numberOfRequiredPods < 0.25 ? "0.25" : numberOfRequiredPods,
-                     queue);
-            result.put(service, Math.max(result.getOrDefault(service, 0), numberOfRequiredPods));
+            final int pods = currentPods.getOrDefault(service, -1);
+            if (pods > 0) {
+                state.getActivatedFromZero()[serviceIndex] = false;
+            } else if (pods == 0 && !state.getActivatedFromZero()[serviceIndex]) {
+                // an activation is not repeated while the deployment cache does not show the new pod yet
+                final Set<String> queues = new HashSet<>();
+                for (int queue : topology.getActivationQueues(serviceIndex)) {
+                    queues.add(topology.getQueue(queue));
+                }
+                idleServices.put(serviceIndex, queues);
+            }
+        });
+        if (idleServices.isEmpty()) {
+            return;
+        }
+
+        final Set<String> queuesToPoll = new HashSet<>();
+        idleServices.values()
+                    .forEach(queuesToPoll::addAll);
+        final Map<String, Integer> messages = queueDepthPoller.poll(mesh.getName(),
+                                                                    strategy.getQueueMetricsSource(),
+                                                                    queuesToPoll);
+        idleServices.forEach((service, queues) -> {
+            if (queues.stream()
+                      .anyMatch(queue -> messages.getOrDefault(queue, 0) > 0)) {
+                k8SApi.scaleDeployment(mesh.getNamespace(), topology.getService(service), 1);
+                state.getActivatedFromZero()[service] = true;
+                recordScaling(mesh, service, 0, 1, now);
+                log.info("{} activated from zero", topology.getService(service));
+            }
         });
-        return result;
     }
 
     /**
-     * Calculates how many pods are needed of a service to consume given rates from a queue.
+     * Records the time of a scaling and exports the removed pods and the cold starts it causes. Pods added within the
+     * recommendation window after a downscale count as cold starts after downscale, as they could have been kept.
+     * In shadow mode no pods are added or removed, so nothing is exported.
      *
-     * @param queue        queue to consume from
-     * @param serviceName  service name which consumes
+     * @param mesh        mesh of the service
+     * @param service     service ordinal
+     * @param currentPods number of pods before the scaling
+     * @param targetPods  number of pods scaled to
+     * @param now         current time in millis
+     */
+    private void recordScaling(final Mesh mesh,
+                               final int service,
+                               final int currentPods,
+                               final int targetPods,
+                               final long now) {
+        final ScalingState state = mesh.getState();
+        final String serviceName = mesh.getTopology()
+                                       .getService(service);
+        final long windowMillis = mesh.getStrategy()
+                                      .getDownscale()
+                                      .getRecommendationWindowSeconds() * 1000L;
+        final boolean export = !mesh.getStrategy()
+                                    .isShadowMode();
+        final long lastDownscale = state.getDownscaleTimes()[service];
+        if (lastDownscale == ScalingState.NEVER || now - lastDownscale >= windowMillis) {
+            state.getRecentlyRemovedPods()[service] = 0;
+        }
+        if (targetPods > currentPods) {
+            state.getUpscaleTimes()[service] = now;
+            final int addedPods = targetPods - currentPods;
+            final int afterDownscale = Math.min(addedPods, state.getRecentlyRemovedPods()[service]);
+            state.getRecentlyRemovedPods()[service] -= afterDownscale;
+            if (export) {
+                metricManager.incColdStartedPods(mesh.getName(), serviceName, addedPods, afterDownscale);
+            }
+        } else if (targetPods < currentPods) {
+            state.getDownscaleTimes()[service] = now;
+            state.getRecentlyRemovedPods()[service] += currentPods - targetPods;
+            if (export) {
+                metricManager.incScaledDownPods(mesh.getName(), serviceName, currentPods - targetPods);
+            }
+        }
+    }
+
+    /**
+     * Records replica increases observed in the deployment cache as upscale times, while this instance is a standby.
+     * This keeps the downscale stabilization of standby instances in line with the leader, so a standby taking over
+     * does not downscale services which were just upscaled.
+     *
+     * @param mesh mesh of the deployments
+     * @param now  current time in millis
+     */
+    private void recordObservedUpscales(final Mesh mesh, final long now) {
+        final boolean leader = leaderElectionService.isLeader();
+        final ScalingState state = mesh.getState();
+        for (int service = 0; service < state.getCurrentPods().length; service++) {
+            final int replicas = state.getCurrentPods()[service];
+            if (replicas < 0) {
+                continue;
+            }
+            final int previous = state.getObservedReplicas()[service];
+            state.getObservedReplicas()[service] = replicas;
+            if (!leader && previous >= 0 && replicas > previous) {
+                state.getUpscaleTimes()[service] = now;
+            }
+        }
+    }
+
+    /**
+     * Stops the threads evaluating the meshes on shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        meshExecutor.shutdownNow();
+    }
+
+    /**
+     * Marks the services which are configured to scale to zero.
+     *
+     * @param mesh mesh of the services
+     */
+    private void updateScaleToZeroServices(final Mesh mesh) {
+        final boolean[] scaleToZero = mesh.getState()
+                                          .getScaleToZero();
+        Arrays.fill(scaleToZero, false);
+        final List<String> services = mesh.getStrategy()
+                                          .getScaleToZero()
+                                          .getServices();
+        for (int i = 0; i < services.size(); i++) {
+            final int service = mesh.getTopology()
+                                    .getServiceIndex(services.get(i));
+            if (service >= 0) {
+                scaleToZero[service] = true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether any message is in the queues a service consumes from or in any queue upstream of them.
+     *
+     * @param mesh    mesh of the service
+     * @param service service ordinal
+     * @return true if messages will have to be consumed by the service
+     */
+    private boolean hasPendingMessages(final Mesh mesh, final int service) {
+        final float[] depths = mesh.getState()
+                                   .getDepths();
+        for (int queue : mesh.getTopology()
+                             .getActivationQueues(service)) {
+            if (depths[queue] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the rate which needs to be consumed from a queue so it is drained within the target time,
+     * even though new pods only start consuming after their startup time. The messages arriving during the
+     * startup have to be drained as well, in the time remaining after the startup.
+     *
+     * @param mesh     mesh of the queue
+     * @param queue    queue ordinal to consume from
+     * @param messages current (or forecast) number of messages in the queue
+     * @return rate how many messages need to be consumed per minute
+     */
+    private float calcStartupAwareRate(final Mesh mesh, final int queue, final float messages) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final Topology topology = mesh.getTopology();
+        final float startupMinutes = podStartupEstimator.getStartupSeconds(mesh,
+                                                                           topology.getService(topology.getConsumerService(
+                                                                                   queue))) / 60F;
+        final float drainMinutes = getDrainMinutes(mesh, queue);
+        float expectedMessages = messages;
+        if (!strategy.getForecast()
+                     .isEnabled()) {
+            // a forecast already contains the growth until the pods are started
+            expectedMessages += Math.max(0, queueForecaster.getTrend(topology.getQueue(queue))) * startupMinutes;
+        }
+        final float remainingMinutes = Math.max(drainMinutes - startupMinutes,
+                                                drainMinutes * MIN_DRAIN_WINDOW_FRACTION);
+        return expectedMessages / remainingMinutes;
+    }
+
+    /**
+     * Gets the time within which the messages of a queue have to be consumed. Without a wait time objective this
+     * is the time given by the queue decrease per minute. With one, by Little's law a backlog consumed at its size
+     * divided by the objective waits at most the objective. If the consumers observe longer waits anyway,
+     * e.g. because messages keep arriving, the time is shortened by the ratio of observed to target wait.
+     *
+     * @param mesh  mesh of the queue
+     * @param queue queue ordinal
+     * @return drain time in minutes
+     */
+    private float getDrainMinutes(final Mesh mesh, final int queue) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        if (!hasWaitTimeObjective(mesh, queue)) {
+            return 1F / strategy.getQueueDecreasePerMinute();
+        }
+        final float targetWaitSeconds = mesh.getTopology()
+                                            .getTargetWaitSeconds(queue);
+        final float observedWaitSeconds = waitTimeEstimator.getWaitSeconds(mesh.getTopology()
+                                                                                .getQueue(queue));
+        float correction = 1;
+        if (!Float.isNaN(observedWaitSeconds)) {
+            correction = Math.min(Math.max(observedWaitSeconds / targetWaitSeconds, 1),
+                                  strategy.getLatencySlo()
+                                          .getMaxCorrection());
+        }
+        return targetWaitSeconds / 60F / correction;
+    }
+
+    private boolean hasWaitTimeObjective(final Mesh mesh, final int queue) {
+        return mesh.getStrategy()
+                   .getLatencySlo()
+                   .isEnabled() && mesh.getTopology()
+                                       .getTargetWaitSeconds(queue) > 0;
+    }
+
+    /**
+     * Gets how far ahead the number of messages of a queue is forecast, which is the startup time of the
+     * consuming pods if it is measured and the configured horizon otherwise.
+     *
+     * @param mesh  mesh of the queue
+     * @param queue queue ordinal
+     * @return forecast horizon in millis
+     */
+    private long getForecastHorizonMillis(final Mesh mesh, final int queue) {
+        final StrategyConfig strategy = mesh.getStrategy();
+        final int service = mesh.getTopology()
+                                .getConsumerService(queue);
+        if (strategy.getPodStartup()
+                    .isEnabled() && service >= 0) {
+            return (long) (podStartupEstimator.getStartupSeconds(mesh,
+                                                                 mesh.getTopology()
+                                                                     .getService(service)) * 1000L);
+        }
+        return strategy.getForecast()
+                       .getHorizonSeconds() * 1000L;
+    }
+
+    /**
+     * Calculates which fraction of the capacity of one pod of a service is needed to consume given rates from a
+     * queue.
+     *
+     * @param mesh         mesh of the queue
+     * @param queue        queue ordinal to consume from
      * @param requiredRate rate how many messages should be consumed
-     * @return number of pods needed
+     * @return number of pods needed if the pods only consumed this queue
      */
-    private int calculateNumberOfRequiredPods(final String queue, final String serviceName, final float requiredRate) {
-        float consumptionPerMinute = rateService.getConsumptionRate(queue, serviceName);
+    private float calculateRequiredCapacity(final Mesh mesh, final int queue, final float requiredRate) {
+        float consumptionPerMinute = rateService.getConsumptionRate(mesh, queue);
         if (consumptionPerMinute < 1) {
             log.warn("Consumption rate for service {} on queue {} is only {}. "
                      + "Check for performance issues. Calculating with rate 1 instead.",
-                     serviceName,
-                     queue,
+                     mesh.getTopology()
+                         .getService(mesh.getTopology()
+                                         .getConsumerService(queue)),
+                     mesh.getTopology()
+                         .getQueue(queue),
                      consumptionPerMinute);
             consumptionPerMinute = 1;
         }
-        float requiredPods = requiredRate / consumptionPerMinute;
-        if (requiredPods < 0.25) {
-            return 0;
+        return requiredRate / consumptionPerMinute;
+    }
+
+    /**
+     * Formats values per queue ordinal for logging.
+     */
+    private String formatQueueValues(final Topology topology, final float[] values) {
+        final StringBuilder result = new StringBuilder("{");
+        for (int queue = 0; queue < values.length; queue++) {
+            if (values[queue] != 0) {
+                if (result.length() > 1) {
+                    result.append(", ");
+                }
+                result.append(topology.getQueue(queue))
+                      .append('=')
+                      .append(values[queue]);
+            }
         }
-        return (int) Math.ceil(requiredRate / consumptionPerMinute);
+        return result.append('}')
+                     .toString();
     }
 
 }
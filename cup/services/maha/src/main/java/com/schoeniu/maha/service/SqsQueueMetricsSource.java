@@ -0,0 +1,37 @@
+package com.schoeniu.maha.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.api.SqsApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Queue metrics source sending one request per queue to SQS, all of them in parallel.
+ */
+@RequiredArgsConstructor
+@Service
+public class SqsQueueMetricsSource implements QueueMetricsSource {
+
+    private final SqsApi sqsApi;
+
+    @Override
+    public QueueMetricsSourceType getType() {
+        return QueueMetricsSourceType.SQS;
+    }
+
+    @Override
+    public Map<String, CompletableFuture<QueueMetrics>> request(final Collection<String> queues) {
+        final Map<String, CompletableFuture<QueueMetrics>> result = new HashMap<>();
+        queues.forEach(queue -> result.put(queue, sqsApi.getQueueMetricsAsync(queue)));
+        return result;
+    }
+
+}
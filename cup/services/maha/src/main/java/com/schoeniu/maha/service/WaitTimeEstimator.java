@@ -0,0 +1,116 @@
+package com.schoeniu.maha.service;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.LatencySloConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Service for observing how long messages wait in the queues before they are consumed, from the wait time
+ * histograms exported by the CUP services.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class WaitTimeEstimator {
+
+    /**
+     * Percentile of the wait time in seconds over all pods consuming a queue.
+     */
+    private static final String WAIT_TIME_QUERY =
+            "histogram_quantile(%s, sum by (queue, le) (rate(application:waited_in_queue_seconds_bucket[1m])))";
+
+    private final MeshService meshService;
+    private final PrometheusApi prometheusApi;
+    private final MetricManager metricManager;
+
+    /**
+     * Last observed wait time percentile per queue in seconds.
+     */
+    private final Map<String, Float> waitSeconds = new ConcurrentHashMap<>();
+
+    /**
+     * Mesh per queue with an observed wait time, so its gauge can be reset after the queue left the mesh.
+     */
+    private final Map<String, String> meshOfObservedQueue = new ConcurrentHashMap<>();
+
+    /**
+     * Queries the current wait time percentiles of all meshes with a latency objective.
+     * Queues without consumed messages in the query window have no percentile, so their previous observation is
+     * forgotten and their gauge is reset to NaN. Otherwise an idle queue would keep the wait time of its last burst
+     * and the next burst would be sized with that stale correction.
+     */
+    @Scheduled(fixedDelayString = "${prometheus.queryIntervalMillis:15000}")
+    public void update() {
+        final Set<String> observedQueues = new HashSet<>();
+        meshService.getMeshes()
+                   .stream()
+                   .map(Mesh::getStrategy)
+                   .map(StrategyConfig::getLatencySlo)
+                   .filter(LatencySloConfig::isEnabled)
+                   .map(LatencySloConfig::getPercentile)
+                   .distinct()
+                   .forEach(percentile -> update(percentile, observedQueues));
+        waitSeconds.keySet()
+                   .removeIf(queue -> {
+                       if (observedQueues.contains(queue)) {
+                           return false;
+                       }
+                       metricManager.setObservedWaitSecondsGauge(meshOfObservedQueue.remove(queue), queue, Float.NaN);
+                       log.debug("No wait time observed for {} anymore", queue);
+                       return true;
+                   });
+    }
+
+    private void update(final float percentile, final Set<String> observedQueues) {
+        for (Sample sample : prometheusApi.query(String.format(WAIT_TIME_QUERY, percentile))) {
+            final String queue = sample.label("queue");
+            final Mesh mesh = findMeshOfQueue(queue);
+            if (mesh == null || mesh.getStrategy()
+                                    .getLatencySlo()
+                                    .getPercentile() != percentile) {
+                continue;
+            }
+            observedQueues.add(queue);
+            waitSeconds.put(queue, (float) sample.value());
+            meshOfObservedQueue.put(queue, mesh.getName());
+            metricManager.setObservedWaitSecondsGauge(mesh.getName(), queue, sample.value());
+            log.debug("Observed wait time of {}: {}s", queue, sample.value());
+        }
+    }
+
+    /**
+     * Gets the last observed wait time percentile of a queue.
+     *
+     * @param queue queue name
+     * @return wait time in seconds, NaN if none was observed yet
+     */
+    public float getWaitSeconds(final String queue) {
+        return waitSeconds.getOrDefault(queue, Float.NaN);
+    }
+
+    private Mesh findMeshOfQueue(final String queue) {
+        if (queue == null) {
+            return null;
+        }
+        return meshService.getMeshes()
+                          .stream()
+                          .filter(mesh -> mesh.getConsumer(queue) != null)
+                          .findFirst()
+                          .orElse(null);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.schoeniu.maha.topology;
+
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+
+import lombok.Getter;
+
+/**
+ * Message mesh scaled by MAHA: the queues and services of one CUP deployment in one namespace, together with
+ * their strategy, compiled topology and the scaling state kept between schedule iterations.
+ */
+@Getter
+public class Mesh {
+
+    private final String name;
+    private final String namespace;
+    private final StrategyConfig strategy;
+    private final Map<String, ConsumerServiceConfig> queuesConsumedFrom;
+    private final Topology topology;
+    private final ScalingState state;
+    /**
+     * Held while the scaling state of this mesh is read or modified, as the schedule iterations and the activation
+     * of services scaled to zero run on different threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public Mesh(final String name,
+                final String namespace,
+                final StrategyConfig strategy,
+                final Map<String, ConsumerServiceConfig> queuesConsumedFrom) {
+        this.name = name;
+        this.namespace = namespace;
+        this.strategy = strategy;
+        this.queuesConsumedFrom = queuesConsumedFrom;
+        this.topology = Topology.compile(queuesConsumedFrom);
+        this.state = new ScalingState(topology);
+    }
+
+    /**
+     * Gets the consumer config of a queue of this mesh.
+     *
+     * @param queue queue name
+     * @return consumer config, null if the queue is not consumed in this mesh
+     */
+    public ConsumerServiceConfig getConsumer(final String queue) {
+        return queuesConsumedFrom.get(queue);
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.schoeniu.maha.topology;
+
+import java.util.Arrays;
+
+import com.schoeniu.maha.util.MutableFloat;
+import com.schoeniu.maha.util.SlidingWindowMax;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Preallocated working arrays of the scaling decisions of a mesh, indexed by the queue, edge and service ordinals
+ * of its {@link Topology}. They are reused by every schedule iteration, so the decision core does not allocate.
+ * Not thread-safe, it must only be accessed while holding the lock of its {@link Mesh}.
+ */
+@Getter
+public class ScalingState {
+
+    /**
+     * Upscale or downscale time of services which were not scaled yet.
+     */
+    public static final long NEVER = Long.MIN_VALUE;
+
+    /**
+     * Number of messages per queue as polled in the current iteration.
+     */
+    private final float[] depths;
+    /**
+     * Gauges exporting the number of messages per queue, resolved on first use.
+     */
+    private final MutableFloat[] depthGauges;
+    /**
+     * Gauges exporting the origin, follow-up and total rates per queue, resolved on first use.
+     */
+    private final MutableFloat[] originRateGauges;
+    private final MutableFloat[] followUpRateGauges;
+    private final MutableFloat[] totalRateGauges;
+    private final float[] originRates;
+    private final float[] totalRates;
+    private final float[] edgeRates;
+    /**
+     * Summed fractions of the capacity of one pod per service needed by all queues it consumes.
+     */
+    private final float[] requiredCapacities;
+    private final int[] requiredPods;
+    /**
+     * Number of pods per service allocated within the pod budget. Services above it are scaled down to it while
+     * the pods of the mesh exceed the budget, regardless of the downscale behaviour.
+     */
+    private final int[] allocatedPods;
+    /**
+     * Services which get no more pods within the pod budget, scratch space of the allocation.
+     */
+    private final boolean[] budgetBlocked;
+    /**
+     * Cost of one pod per service in units of the pod budget, scratch space of the allocation.
+     */
+    private final float[] podCosts;
+    /**
+     * Current number of pods per service, -1 if the deployment is not known.
+     */
+    private final int[] currentPods;
+    /**
+     * Number of pods to scale each service to, -1 if it is not scaled.
+     */
+    private final int[] targetPods;
+    /**
+     * Gauges exporting the required, current and target pods per service, resolved on first use.
+     */
+    private final MutableFloat[] requiredPodsGauges;
+    private final MutableFloat[] currentPodsGauges;
+    private final MutableFloat[] targetPodsGauges;
+    /**
+     * Number of pods per service MAHA would have scaled to in shadow mode, -1 if not known yet. Used as current pods
+     * instead of those of the deployment, so the decisions follow the recommendations as if they had been applied.
+     */
+    private final int[] shadowPods;
+    /**
+     * Number of pods per service set by the active autoscaler in shadow mode, -1 if the deployment is not known.
+     */
+    private final int[] actualPods;
+    /**
+     * Gauges exporting the actual pods and the difference of recommended and actual pods in shadow mode, resolved
+     * on first use.
+     */
+    private final MutableFloat[] shadowActualPodsGauges;
+    private final MutableFloat[] shadowPodDifferenceGauges;
+    private final boolean[] scaleToZero;
+    /**
+     * Services consuming a queue whose number of messages is unknown in the current iteration, as it never
+     * answered. They are not scaled.
+     */
+    private final boolean[] unknownDepths;
+    /**
+     * Services activated from zero by the fast path, which are not activated again until their deployment shows
+     * pods or a schedule iteration scales them.
+     */
+    private final boolean[] activatedFromZero;
+    /**
+     * Time in millis the queues upstream of the services scaled to zero were last polled for their activation.
+     */
+    @Setter
+    private long lastActivationPoll = NEVER;
+    /**
+     * Number of listener threads per queue of each pod per service, 1 unless the service is scaled vertically.
+     */
+    private final int[] concurrency;
+    /**
+     * Time in millis of the last upscale per service.
+     */
+    private final long[] upscaleTimes;
+    /**
+     * Number of pods per service observed in the previous iteration, -1 if not observed yet.
+     */
+    private final int[] observedReplicas;
+    /**
+     * Time in millis of the last downscale per service.
+     */
+    private final long[] downscaleTimes;
+    /**
+     * Number of pods per service removed by downscales within the recommendation window, which cause a cold start
+     * if they are added again.
+     */
+    private final int[] recentlyRemovedPods;
+    /**
+     * Recommended number of pods per service over the recommendation window, created on first use and resized on
+     * the next use if the configured window changed.
+     */
+    private final SlidingWindowMax[] recommendations;
+
+    public ScalingState(final Topology topology) {
+        final int queues = topology.getNumberOfQueues();
+        final int services = topology.getNumberOfServices();
+        depths = new float[queues];
+        depthGauges = new MutableFloat[queues];
+        originRateGauges = new MutableFloat[queues];
+        followUpRateGauges = new MutableFloat[queues];
+        totalRateGauges = new MutableFloat[queues];
+        originRates = new float[queues];
+        totalRates = new float[queues];
+        edgeRates = new float[topology.getNumberOfEdges()];
+        requiredCapacities = new float[services];
+        requiredPods = new int[services];
+        allocatedPods = new int[services];
+        budgetBlocked = new boolean[services];
+        podCosts = new float[services];
+        currentPods = new int[services];
+        targetPods = new int[services];
+        requiredPodsGauges = new MutableFloat[services];
+        currentPodsGauges = new MutableFloat[services];
+        targetPodsGauges = new MutableFloat[services];
+        shadowPods = new int[services];
+        actualPods = new int[services];
+        shadowActualPodsGauges = new MutableFloat[services];
+        shadowPodDifferenceGauges = new MutableFloat[services];
+        scaleToZero = new boolean[services];
+        unknownDepths = new boolean[services];
+        activatedFromZero = new boolean[services];
+        concurrency = new int[services];
+        upscaleTimes = new long[services];
+        observedReplicas = new int[services];
+        downscaleTimes = new long[services];
+        recentlyRemovedPods = new int[services];
+        recommendations = new SlidingWindowMax[services];
+        Arrays.fill(upscaleTimes, NEVER);
+        Arrays.fill(downscaleTimes, NEVER);
+        Arrays.fill(observedReplicas, -1);
+        Arrays.fill(concurrency, 1);
+        Arrays.fill(shadowPods, -1);
+    }
+
+    /**
+     * Carries over the state kept between schedule iterations from the state of a previous topology of the same
+     * mesh. Queues and services are matched by name, new ones start without state.
+     *
+     * @param previousTopology topology the previous state belongs to
+     * @param previous         previous state
+     * @param topology         topology this state belongs to
+     */
+    public void carryOver(final Topology previousTopology, final ScalingState previous, final Topology topology) {
+        for (int queue = 0; queue < depths.length; queue++) {
+            final int previousQueue = previousTopology.getQueueIndex(topology.getQueue(queue));
+            if (previousQueue >= 0) {
+                depths[queue] = previous.depths[previousQueue];
+                depthGauges[queue] = previous.depthGauges[previousQueue];
+            }
+        }
+        for (int service = 0; service < upscaleTimes.length; service++) {
+            final int previousService = previousTopology.getServiceIndex(topology.getService(service));
+            if (previousService >= 0) {
+                upscaleTimes[service] = previous.upscaleTimes[previousService];
+                downscaleTimes[service] = previous.downscaleTimes[previousService];
+                observedReplicas[service] = previous.observedReplicas[previousService];
+                recentlyRemovedPods[service] = previous.recentlyRemovedPods[previousService];
+                concurrency[service] = previous.concurrency[previousService];
+                activatedFromZero[service] = previous.activatedFromZero[previousService];
+                shadowPods[service] = previous.shadowPods[previousService];
+                recommendations[service] = previous.recommendations[previousService];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,600 @@
+package com.schoeniu.maha.topology;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.collections4.MapUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compiled, index based representation of the queue graph defined by the {@link ScalingConfigProperties}.
+ * <p>
+ * Queues and services are assigned ordinals. The relative production rates form a sparse transfer matrix T
+ * stored in compressed rows, where T[i][j] is the rate at which consuming queue i produces to queue j.
+ * The nodes are ordered topologically by their strongly connected components, so the total rates
+ * x = o + xT for origin rates o can be solved in a single sweep over the edges. Components containing cycles
+ * are solved by a fixed-point iteration, which is only accepted at compile time if it converges.
+ */
+@Slf4j
+public final class Topology {
+
+    private static final int MAX_ITERATIONS = 1000;
+    private static final float TOLERANCE = 1e-4F;
+    private static final int POWER_ITERATIONS = 200;
+
+    private final String[] queues;
+    private final Map<String, Integer> queueIndex;
+    private final String[] services;
+    private final Map<String, Integer> serviceIndex;
+    private final int[] consumerService;
+    private final float[] configuredConsumptionRates;
+    private final float[] targetWaitSeconds;
+
+    private final int[] edgeOffsets;
+    private final int[] edgeSources;
+    private final int[] edgeTargets;
+    private final float[] configuredEdgeRates;
+
+    private final int[] order;
+    private final int[] componentOffsets;
+    private final int[] componentOf;
+    private final boolean[] cyclicComponent;
+
+    private final int[][] activationQueues;
+    private final boolean[][] upstreamServices;
+    private final int[] numberOfUpstreamServices;
+
+    private final float[] fixedPointBase;
+    private final float[] fixedPointNext;
+
+    private Topology(final String[] queues,
+                     final String[] services,
+                     final int[] consumerService,
+                     final float[] configuredConsumptionRates,
+                     final float[] targetWaitSeconds,
+                     final int[] edgeOffsets,
+                     final int[] edgeTargets,
+                     final float[] configuredEdgeRates) {
+        this.queues = queues;
+        this.queueIndex = indexOf(queues);
+        this.services = services;
+        this.serviceIndex = indexOf(services);
+        this.consumerService = consumerService;
+        this.configuredConsumptionRates = configuredConsumptionRates;
+        this.targetWaitSeconds = targetWaitSeconds;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.configuredEdgeRates = configuredEdgeRates;
+
+        final int n = queues.length;
+        this.edgeSources = new int[edgeTargets.length];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(edgeSources, edgeOffsets[i], edgeOffsets[i + 1], i);
+        }
+        this.order = new int[n];
+        this.componentOf = new int[n];
+        final List<Integer> offsets = new ArrayList<>();
+        final List<Boolean> cyclic = new ArrayList<>();
+        computeComponents(offsets, cyclic);
+        this.componentOffsets = offsets.stream()
+                                       .mapToInt(Integer::intValue)
+                                       .toArray();
+        this.cyclicComponent = new boolean[cyclic.size()];
+        for (int c = 0; c < cyclic.size(); c++) {
+            cyclicComponent[c] = cyclic.get(c);
+        }
+        this.activationQueues = computeActivationQueues();
+        this.upstreamServices = new boolean[services.length][services.length];
+        this.numberOfUpstreamServices = new int[services.length];
+        computeUpstreamServices();
+        this.fixedPointBase = new float[n];
+        this.fixedPointNext = new float[n];
+    }
+
+    /**
+     * Compiles the queue graph of a mesh.
+     *
+     * @param consumers queues consumed from, with their consumer config
+     * @return compiled topology
+     * @throws IllegalStateException if the config contains a cycle whose rates grow without bound
+     */
+    public static Topology compile(final Map<String, ConsumerServiceConfig> consumers) {
+        final Map<String, Integer> queueIndex = new LinkedHashMap<>();
+        final Map<String, Integer> serviceIndex = new LinkedHashMap<>();
+        consumers.keySet()
+                 .forEach(queue -> queueIndex.putIfAbsent(queue, queueIndex.size()));
+        consumers.values()
+                 .forEach(consumer -> {
+                     if (MapUtils.isNotEmpty(consumer.getQueuesProducedTo())) {
+                         consumer.getQueuesProducedTo()
+                                 .keySet()
+                                 .forEach(queue -> queueIndex.putIfAbsent(queue, queueIndex.size()));
+                     }
+                     if (StringUtils.isNotBlank(consumer.getServiceName())) {
+                         serviceIndex.putIfAbsent(consumer.getServiceName(), serviceIndex.size());
+                     }
+                 });
+
+        final int n = queueIndex.size();
+        final int[] consumerService = new int[n];
+        Arrays.fill(consumerService, -1);
+        final float[] consumptionRates = new float[n];
+        final float[] targetWaitSeconds = new float[n];
+        final int[] edgeOffsets = new int[n + 1];
+        final List<Integer> targets = new ArrayList<>();
+        final List<Float> rates = new ArrayList<>();
+        final String[] queues = queueIndex.keySet()
+                                          .toArray(String[]::new);
+        for (int i = 0; i < n; i++) {
+            edgeOffsets[i] = targets.size();
+            final ConsumerServiceConfig consumer = consumers.get(queues[i]);
+            if (consumer == null) {
+                continue;
+            }
+            if (StringUtils.isNotBlank(consumer.getServiceName())) {
+                consumerService[i] = serviceIndex.get(consumer.getServiceName());
+                consumptionRates[i] = consumer.getConsumptionRate();
+                targetWaitSeconds[i] = consumer.getTargetWaitSeconds();
+            }
+            if (MapUtils.isNotEmpty(consumer.getQueuesProducedTo())) {
+                for (Map.Entry<String, ProducerQueueConfig> entry : consumer.getQueuesProducedTo()
+                                                                            .entrySet()) {
+                    targets.add(queueIndex.get(entry.getKey()));
+                    rates.add(entry.getValue()
+                                   .getRelativeProductionRate());
+                }
+            }
+        }
+        edgeOffsets[n] = targets.size();
+        final float[] configuredRates = new float[rates.size()];
+        for (int e = 0; e < configuredRates.length; e++) {
+            configuredRates[e] = rates.get(e);
+        }
+
+        final Topology topology = new Topology(queues,
+                                               serviceIndex.keySet()
+                                                           .toArray(String[]::new),
+                                               consumerService,
+                                               consumptionRates,
+                                               targetWaitSeconds,
+                                               edgeOffsets,
+                                               targets.stream()
+                                                      .mapToInt(Integer::intValue)
+                                                      .toArray(),
+                                               configuredRates);
+        topology.validateCycles();
+        return topology;
+    }
+
+    /**
+     * Solves the total rates x = o + xT for the given origin rates o in one sweep in topological order.
+     * Cyclic components are solved by fixed-point iteration. Not thread-safe, as cyclic components use
+     * shared scratch space.
+     *
+     * @param originRates rates per queue ordinal, which have to be consumed from the queues themselves
+     * @param edgeRates   relative production rate per edge ordinal
+     * @param totalRates  output of the total rates per queue ordinal including all follow-up rates
+     */
+    public synchronized void propagate(final float[] originRates, final float[] edgeRates, final float[] totalRates) {
+        System.arraycopy(originRates, 0, totalRates, 0, queues.length);
+        for (int c = 0; c < cyclicComponent.length; c++) {
+            if (cyclicComponent[c]) {
+                solveComponent(c, edgeRates, totalRates);
+            }
+            for (int k = componentOffsets[c]; k < componentOffsets[c + 1]; k++) {
+                final int i = order[k];
+                for (int e = edgeOffsets[i]; e < edgeOffsets[i + 1]; e++) {
+                    final int j = edgeTargets[e];
+                    if (componentOf[j] != c) {
+                        totalRates[j] += totalRates[i] * edgeRates[e];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Solves x = base + xT restricted to the edges inside of a component by Jacobi iteration.
+     */
+    private void solveComponent(final int component, final float[] edgeRates, final float[] rates) {
+        final int from = componentOffsets[component];
+        final int to = componentOffsets[component + 1];
+        for (int k = from; k < to; k++) {
+            fixedPointBase[order[k]] = rates[order[k]];
+        }
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            for (int k = from; k < to; k++) {
+                fixedPointNext[order[k]] = fixedPointBase[order[k]];
+            }
+            for (int k = from; k < to; k++) {
+                final int i = order[k];
+                for (int e = edgeOffsets[i]; e < edgeOffsets[i + 1]; e++) {
+                    final int j = edgeTargets[e];
+                    if (componentOf[j] == component) {
+                        fixedPointNext[j] += rates[i] * edgeRates[e];
+                    }
+                }
+            }
+            float maxChange = 0;
+            float maxValue = 1;
+            for (int k = from; k < to; k++) {
+                final int i = order[k];
+                maxChange = Math.max(maxChange, Math.abs(fixedPointNext[i] - rates[i]));
+                maxValue = Math.max(maxValue, Math.abs(fixedPointNext[i]));
+                rates[i] = fixedPointNext[i];
+            }
+            if (maxChange <= TOLERANCE * maxValue) {
+                return;
+            }
+        }
+        log.warn("Rates of cyclic queues {} did not converge within {} iterations.",
+                 componentQueues(component),
+                 MAX_ITERATIONS);
+    }
+
+    /**
+     * Finds the strongly connected components with Tarjan's algorithm and orders them topologically.
+     */
+    private void computeComponents(final List<Integer> offsets, final List<Boolean> cyclic) {
+        final int n = queues.length;
+        final int[] index = new int[n];
+        final int[] lowLink = new int[n];
+        final boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        final Deque<Integer> stack = new ArrayDeque<>();
+        final List<int[]> components = new ArrayList<>();
+        final int[] counter = { 0 };
+
+        for (int start = 0; start < n; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            // iterative depth first search with explicit call stack of (node, next edge)
+            final Deque<int[]> callStack = new ArrayDeque<>();
+            callStack.push(new int[] { start, edgeOffsets[start] });
+            index[start] = lowLink[start] = counter[0]++;
+            stack.push(start);
+            onStack[start] = true;
+            while (!callStack.isEmpty()) {
+                final int[] frame = callStack.peek();
+                final int v = frame[0];
+                if (frame[1] < edgeOffsets[v + 1]) {
+                    final int w = edgeTargets[frame[1]++];
+                    if (index[w] == -1) {
+                        index[w] = lowLink[w] = counter[0]++;
+                        stack.push(w);
+                        onStack[w] = true;
+                        callStack.push(new int[] { w, edgeOffsets[w] });
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    final int parent = callStack.peek()[0];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+                if (lowLink[v] == index[v]) {
+                    final List<Integer> members = new ArrayList<>();
+                    int w;
+                    do {
+                        w = stack.pop();
+                        onStack[w] = false;
+                        members.add(w);
+                    } while (w != v);
+                    components.add(members.stream()
+                                          .mapToInt(Integer::intValue)
+                                          .toArray());
+                }
+            }
+        }
+
+        // Tarjan emits components in reverse topological order
+        Collections.reverse(components);
+        int position = 0;
+        for (int c = 0; c < components.size(); c++) {
+            offsets.add(position);
+            final int[] members = components.get(c);
+            boolean hasCycle = members.length > 1;
+            for (int member : members) {
+                order[position++] = member;
+                componentOf[member] = c;
+                for (int e = edgeOffsets[member]; e < edgeOffsets[member + 1]; e++) {
+                    hasCycle |= edgeTargets[e] == member;
+                }
+            }
+            cyclic.add(hasCycle);
+        }
+        offsets.add(position);
+    }
+
+    /**
+     * Collects for every service the queues it consumes from and all queues upstream of them,
+     * by a breadth first search over the reversed edges.
+     */
+    private int[][] computeActivationQueues() {
+        final int n = queues.length;
+        final int[] reverseOffsets = new int[n + 1];
+        for (int target : edgeTargets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        final int[] reverseSources = new int[edgeTargets.length];
+        final int[] fill = Arrays.copyOf(reverseOffsets, n);
+        for (int e = 0; e < edgeTargets.length; e++) {
+            reverseSources[fill[edgeTargets[e]]++] = edgeSources[e];
+        }
+
+        final int[][] result = new int[services.length][];
+        for (int service = 0; service < services.length; service++) {
+            final boolean[] visited = new boolean[n];
+            final Deque<Integer> open = new ArrayDeque<>();
+            for (int queue = 0; queue < n; queue++) {
+                if (consumerService[queue] == service) {
+                    visited[queue] = true;
+                    open.add(queue);
+                }
+            }
+            final List<Integer> reached = new ArrayList<>();
+            while (!open.isEmpty()) {
+                final int queue = open.poll();
+                reached.add(queue);
+                for (int k = reverseOffsets[queue]; k < reverseOffsets[queue + 1]; k++) {
+                    final int source = reverseSources[k];
+                    if (!visited[source]) {
+                        visited[source] = true;
+                        open.add(source);
+                    }
+                }
+            }
+            result[service] = reached.stream()
+                                     .mapToInt(Integer::intValue)
+                                     .toArray();
+        }
+        return result;
+    }
+
+    /**
+     * Derives from the activation queues of every service the other services whose messages it eventually consumes.
+     */
+    private void computeUpstreamServices() {
+        for (int service = 0; service < services.length; service++) {
+            for (int queue : activationQueues[service]) {
+                final int upstream = consumerService[queue];
+                if (upstream >= 0 && upstream != service && !upstreamServices[service][upstream]) {
+                    upstreamServices[service][upstream] = true;
+                    numberOfUpstreamServices[service]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the rates of every cycle converge with the configured relative production rates.
+     */
+    private void validateCycles() {
+        for (int c = 0; c < cyclicComponent.length; c++) {
+            if (!cyclicComponent[c]) {
+                continue;
+            }
+            log.info("Queues {} form a cycle.", componentQueues(c));
+            final double spectralRadius = estimateSpectralRadius(c, configuredEdgeRates);
+            if (spectralRadius >= 1 - TOLERANCE) {
+                throw new IllegalStateException(String.format(
+                        "Cycle of queues %s does not converge, its production rate per round trip is %.3f.",
+                        componentQueues(c),
+                        spectralRadius));
+            }
+        }
+    }
+
+    /**
+     * Checks that the rates of every cycle converge with the given relative production rates, e.g. learned ones.
+     * As the configured rates converge, a cycle whose rates are all at most the configured ones converges as well
+     * and is not checked again.
+     *
+     * @param edgeRates relative production rate per edge ordinal
+     * @return true if {@link #propagate} converges with the given rates
+     */
+    public synchronized boolean converges(final float[] edgeRates) {
+        for (int c = 0; c < cyclicComponent.length; c++) {
+            if (cyclicComponent[c] && exceedsConfiguredRates(c, edgeRates)
+                && estimateSpectralRadius(c, edgeRates) >= 1 - TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean exceedsConfiguredRates(final int component, final float[] edgeRates) {
+        for (int k = componentOffsets[component]; k < componentOffsets[component + 1]; k++) {
+            final int i = order[k];
+            for (int e = edgeOffsets[i]; e < edgeOffsets[i + 1]; e++) {
+                if (componentOf[edgeTargets[e]] == component && edgeRates[e] > configuredEdgeRates[e]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimates the spectral radius of the transfer matrix of a cyclic component by power iteration. The rates of
+     * the component converge if it is below 1. Uses the fixed-point scratch space.
+     */
+    private double estimateSpectralRadius(final int component, final float[] edgeRates) {
+        final float[] vector = fixedPointBase;
+        final float[] next = fixedPointNext;
+        final int from = componentOffsets[component];
+        final int to = componentOffsets[component + 1];
+        for (int k = from; k < to; k++) {
+            vector[order[k]] = 1;
+        }
+        double logGrowth = 0;
+        final int measuredIterations = POWER_ITERATIONS / 2;
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            for (int k = from; k < to; k++) {
+                next[order[k]] = 0;
+            }
+            for (int k = from; k < to; k++) {
+                final int i = order[k];
+                for (int e = edgeOffsets[i]; e < edgeOffsets[i + 1]; e++) {
+                    if (componentOf[edgeTargets[e]] == component) {
+                        next[edgeTargets[e]] += vector[i] * edgeRates[e];
+                    }
+                }
+            }
+            double norm = 0;
+            double previousNorm = 0;
+            for (int k = from; k < to; k++) {
+                norm += next[order[k]];
+                previousNorm += vector[order[k]];
+            }
+            if (norm == 0) {
+                return 0;
+            }
+            if (iteration >= POWER_ITERATIONS - measuredIterations) {
+                logGrowth += Math.log(norm / previousNorm);
+            }
+            for (int k = from; k < to; k++) {
+                vector[order[k]] = (float) (next[order[k]] / norm);
+            }
+        }
+        return Math.exp(logGrowth / measuredIterations);
+    }
+
+    private List<String> componentQueues(final int component) {
+        final List<String> result = new ArrayList<>();
+        for (int k = componentOffsets[component]; k < componentOffsets[component + 1]; k++) {
+            result.add(queues[order[k]]);
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> indexOf(final String[] names) {
+        final Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            result.put(names[i], i);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    public int getNumberOfQueues() {
+        return queues.length;
+    }
+
+    public int getNumberOfServices() {
+        return services.length;
+    }
+
+    public int getNumberOfEdges() {
+        return edgeTargets.length;
+    }
+
+    public String getQueue(final int queue) {
+        return queues[queue];
+    }
+
+    /**
+     * @param queue queue name
+     * @return ordinal of the queue or -1 if it is not part of the topology
+     */
+    public int getQueueIndex(final String queue) {
+        return queueIndex.getOrDefault(queue, -1);
+    }
+
+    public String getService(final int service) {
+        return services[service];
+    }
+
+    /**
+     * @param service service name
+     * @return ordinal of the service or -1 if it is not part of the topology
+     */
+    public int getServiceIndex(final String service) {
+        return serviceIndex.getOrDefault(service, -1);
+    }
+
+    /**
+     * @param queue queue ordinal
+     * @return ordinal of the service consuming the queue or -1 if the queue has no consumer
+     */
+    public int getConsumerService(final int queue) {
+        return consumerService[queue];
+    }
+
+    /**
+     * @param queue queue ordinal
+     * @return configured consumption rate per pod of the service consuming the queue, 0 if it has no consumer
+     */
+    public float getConfiguredConsumptionRate(final int queue) {
+        return configuredConsumptionRates[queue];
+    }
+
+    /**
+     * @param queue queue ordinal
+     * @return wait time objective of the messages in the queue in seconds, 0 if the queue has none
+     */
+    public float getTargetWaitSeconds(final int queue) {
+        return targetWaitSeconds[queue];
+    }
+
+    /**
+     * Gets the queues whose messages will eventually have to be consumed by a service,
+     * meaning the queues the service consumes from and all queues upstream of them.
+     *
+     * @param service service ordinal
+     * @return queue ordinals
+     */
+    public int[] getActivationQueues(final int service) {
+        return activationQueues[service];
+    }
+
+    /**
+     * Checks whether a service consumes messages which were produced by another service, directly or through
+     * further services.
+     *
+     * @param service  service ordinal
+     * @param upstream ordinal of the possibly upstream service
+     * @return true if the upstream service is a different service upstream of the service
+     */
+    public boolean isUpstreamService(final int service, final int upstream) {
+        return upstreamServices[service][upstream];
+    }
+
+    /**
+     * @param service service ordinal
+     * @return number of other services upstream of the service
+     */
+    public int getNumberOfUpstreamServices(final int service) {
+        return numberOfUpstreamServices[service];
+    }
+
+    public int getEdgeSource(final int edge) {
+        return edgeSources[edge];
+    }
+
+    public int getEdgeTarget(final int edge) {
+        return edgeTargets[edge];
+    }
+
+    public float getConfiguredEdgeRate(final int edge) {
+        return configuredEdgeRates[edge];
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.schoeniu.maha.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Circuit breaker guarding calls to a dependency. After a number of consecutive failed calls it opens and rejects
+ * calls without sending them, so callers fall back to cached values instead of waiting for timeouts. Once the open
+ * time passed, a single trial call is let through, which closes the breaker again on success and reopens it on
+ * failure. Thread-safe.
+ */
+@ToString
+public class CircuitBreaker {
+
+    /**
+     * State of a circuit breaker, the ordinal is exported as gauge value.
+     */
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    @Getter
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    /**
+     * @param failureThreshold number of consecutive failed calls opening the breaker
+     * @param openMillis       time in millis calls are rejected before a trial call is let through
+     */
+    public CircuitBreaker(final int failureThreshold, final long openMillis) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1 but was " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Checks whether a call may be sent. The outcome of every permitted call has to be recorded.
+     *
+     * @param now current time in millis
+     * @return true if the call may be sent, false if it is rejected
+     */
+    public synchronized boolean tryAcquire(final long now) {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && now - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        // only the single trial call is permitted while half open
+        return false;
+    }
+
+    /**
+     * Records a successful call, which closes the breaker.
+     */
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed call, which opens the breaker if it was the trial call or the threshold is reached.
+     *
+     * @param now current time in millis
+     */
+    public synchronized void recordFailure(final long now) {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.schoeniu.maha.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Exponentially weighted moving average, which additionally tracks the exponentially weighted variance
+ * to provide a confidence bound of the estimate.
+ */
+@ToString
+public class Ewma {
+
+    private final double alpha;
+
+    @Getter
+    private double mean;
+    private double variance;
+    @Getter
+    private long samples;
+
+    /**
+     * @param alpha smoothing factor between 0 and 1, higher values weight recent samples more
+     */
+    public Ewma(final double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1] but was " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * Adds a new sample to the average.
+     *
+     * @param value sample value
+     */
+    public void update(final double value) {
+        if (samples == 0) {
+            mean = value;
+            variance = 0;
+        } else {
+            final double diff = value - mean;
+            final double increment = alpha * diff;
+            mean += increment;
+            variance = (1 - alpha) * (variance + diff * increment);
+        }
+        samples++;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(variance);
+    }
+
+    /**
+     * Gets the lower confidence bound of the estimate.
+     *
+     * @param z number of standard deviations below the mean
+     * @return mean minus z standard deviations
+     */
+    public double getLowerBound(final double z) {
+        return mean - z * getStandardDeviation();
+    }
+
+    /**
+     * Whether the estimate is warm, meaning it has seen enough samples and is stable enough to be trusted.
+     *
+     * @param minSamples           minimal number of samples
+     * @param maxRelativeDeviation maximal standard deviation relative to the mean
+     * @return true if the estimate can be used
+     */
+    public boolean isWarm(final long minSamples, final double maxRelativeDeviation) {
+        return samples >= minSamples && mean > 0 && getStandardDeviation() / mean <= maxRelativeDeviation;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.schoeniu.maha.util;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Holt linear (double exponential) smoothing for irregularly spaced samples.
+ * Tracks a smoothed level and a smoothed trend per minute, which are extrapolated linearly for forecasts.
+ */
+@ToString
+public class HoltLinearForecast {
+
+    private static final float MILLIS_PER_MINUTE = 60_000F;
+
+    private final float alpha;
+    private final float beta;
+
+    @Getter
+    private float level;
+    /**
+     * Change of the level per minute.
+     */
+    @Getter
+    private float trend;
+    private long lastTime;
+    @Getter
+    private long samples;
+
+    /**
+     * @param alpha smoothing factor of the level between 0 and 1
+     * @param beta  smoothing factor of the trend between 0 and 1
+     */
+    public HoltLinearForecast(final float alpha, final float beta) {
+        if (alpha <= 0 || alpha > 1 || beta <= 0 || beta > 1) {
+            throw new IllegalArgumentException("Alpha and beta must be in (0, 1] but were " + alpha + ", " + beta);
+        }
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * Adds a new sample to the model.
+     *
+     * @param time  timestamp of the sample in millis
+     * @param value value of the sample
+     */
+    public void update(final long time, final float value) {
+        if (samples == 0) {
+            level = value;
+            trend = 0;
+        } else {
+            final float minutes = (time - lastTime) / MILLIS_PER_MINUTE;
+            if (minutes <= 0) {
+                return;
+            }
+            final float previousLevel = level;
+            level = alpha * value + (1 - alpha) * (previousLevel + trend * minutes);
+            final float observedTrend = (level - previousLevel) / minutes;
+            trend = samples == 1 ? observedTrend : beta * observedTrend + (1 - beta) * trend;
+        }
+        lastTime = time;
+        samples++;
+    }
+
+    /**
+     * Forecasts the value at a time after the last sample.
+     *
+     * @param horizonMillis time after the last sample in millis
+     * @return forecast value
+     */
+    public float forecast(final long horizonMillis) {
+        return level + trend * horizonMillis / MILLIS_PER_MINUTE;
+    }
+
+}
@@ -41,4 +41,8 @@ public class MutableFloat extends Number {
     public void setValue(final Number value) {
         this.value = value.floatValue();
     }
+
+    public void setValue(final float value) {
+        this.value = value;
+    }
 }
@@ -0,0 +1,97 @@
+package com.schoeniu.maha.util;
+
+import lombok.Getter;
+
+/**
+ * Maximum of timestamped int samples within a sliding time window. Keeps only the samples which can still become
+ * the maximum, in decreasing order, so adding a sample and reading the maximum take amortized constant time.
+ */
+public class SlidingWindowMax {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    @Getter
+    private final long windowMillis;
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+
+    public SlidingWindowMax(final long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative but was " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Adds a sample and drops the samples which left the window.
+     *
+     * @param time  timestamp of the sample in millis, not before the previous one
+     * @param value value of the sample
+     */
+    public void add(final long time, final int value) {
+        // older samples not greater than the new one can never be the maximum again
+        while (size > 0 && values[physicalIndex(size - 1)] <= value) {
+            size--;
+        }
+        if (size == times.length) {
+            grow();
+        }
+        final int index = physicalIndex(size);
+        times[index] = time;
+        values[index] = value;
+        size++;
+        evict(time);
+    }
+
+    /**
+     * @param now current time in millis
+     * @return maximum of the samples within the window before now, or the given default if there is none
+     */
+    public int getMax(final long now, final int defaultValue) {
+        evict(now);
+        return size == 0 ? defaultValue : values[head];
+    }
+
+    /**
+     * Creates a sliding window of another size with the samples of this window, so a changed window size takes
+     * effect without forgetting the recent maximum. Samples outside of the new window are dropped with the next
+     * sample.
+     *
+     * @param newWindowMillis size of the new window in millis
+     * @return new sliding window
+     */
+    public SlidingWindowMax resize(final long newWindowMillis) {
+        final SlidingWindowMax result = new SlidingWindowMax(newWindowMillis);
+        for (int i = 0; i < size; i++) {
+            result.add(times[physicalIndex(i)], values[physicalIndex(i)]);
+        }
+        return result;
+    }
+
+    private void evict(final long now) {
+        // the newest sample is always kept, so a window of 0 is the last sample
+        while (size > 1 && times[head] <= now - windowMillis) {
+            head = (head + 1) % times.length;
+            size--;
+        }
+    }
+
+    private void grow() {
+        final long[] newTimes = new long[times.length * 2];
+        final int[] newValues = new int[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            newTimes[i] = times[physicalIndex(i)];
+            newValues[i] = values[physicalIndex(i)];
+        }
+        times = newTimes;
+        values = newValues;
+        head = 0;
+    }
+
+    private int physicalIndex(final int index) {
+        return (head + index) % times.length;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.schoeniu.maha.util;
+
+/**
+ * Fixed size ring buffer of timestamped float samples, which overwrites the oldest sample when full.
+ * Samples are indexed from the oldest (0) to the newest (size - 1).
+ */
+public class TimeSeriesRingBuffer {
+
+    private final long[] times;
+    private final float[] values;
+    private int head;
+    private int size;
+
+    public TimeSeriesRingBuffer(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive but was " + capacity);
+        }
+        this.times = new long[capacity];
+        this.values = new float[capacity];
+    }
+
+    /**
+     * Adds a sample, overwriting the oldest one if the buffer is full.
+     *
+     * @param time  timestamp of the sample in millis
+     * @param value value of the sample
+     */
+    public void add(final long time, final float value) {
+        final int index = (head + size) % times.length;
+        times[index] = time;
+        values[index] = value;
+        if (size < times.length) {
+            size++;
+        } else {
+            head = (head + 1) % times.length;
+        }
+    }
+
+    /**
+     * Removes the oldest sample.
+     */
+    public void removeOldest() {
+        if (size == 0) {
+            throw new IllegalStateException("Buffer is empty");
+        }
+        head = (head + 1) % times.length;
+        size--;
+    }
+
+    public long getTime(final int index) {
+        return times[physicalIndex(index)];
+    }
+
+    public float getValue(final int index) {
+        return values[physicalIndex(index)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int physicalIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return (head + index) % times.length;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.schoeniu.maha.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.observability.MetricManager;
+
+import io.kubernetes.client.openapi.ApiClient;
+import io.kubernetes.client.openapi.apis.AppsV1Api;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+class K8sApiTest {
+
+    private static final String NAMESPACE = "cup";
+    private static final String DEPLOYMENT = "cup-trigger";
+
+    /**
+     * Number of replicas of every scale request received by the stubbed API server, in order.
+     */
+    private final BlockingQueue<Integer> sentReplicas = new LinkedBlockingQueue<>();
+    private final Map<String, Integer> cachedReplicas = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile Interceptor apiServer;
+    private K8sApi systemUnderTest;
+
+    @BeforeEach
+    void setUp() {
+        apiServer = chain -> respond(chain.request(), 200);
+        // answers every request in place of the API server
+        ApiClient apiClient = new ApiClient().setHttpClient(new OkHttpClient.Builder().addInterceptor(chain -> {
+                                                                                          requests.incrementAndGet();
+                                                                                          sentReplicas.add(getReplicas(chain.request()));
+                                                                                          return apiServer.intercept(chain);
+                                                                                      })
+                                                                                      .build());
+        CircuitBreakerRegistry circuitBreakers = mock(CircuitBreakerRegistry.class);
+        when(circuitBreakers.tryAcquire(any())).thenReturn(true);
+        systemUnderTest = new K8sApi(new AppsV1Api(apiClient),
+                                     null,
+                                     null,
+                                     List.of(),
+                                     null,
+                                     new MetricManager(new SimpleMeterRegistry(), "maha"),
+                                     circuitBreakers) {
+
+            @Override
+            Integer getCachedReplicas(final String namespace, final String deployment) {
+                return cachedReplicas.get(namespace + "/" + deployment);
+            }
+        };
+    }
+
+    @AfterEach
+    void tearDown() {
+        systemUnderTest.stopInformers();
+    }
+
+    @Test
+    void skipScalingIfCachedAndSentReplicasMatch() throws InterruptedException {
+        //given
+        cachedReplicas.put(NAMESPACE + "/" + DEPLOYMENT, 3);
+
+        //when
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 3);
+
+        //then
+        assertEquals(0, requests.get());
+
+        //when
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 4);
+
+        //then
+        assertEquals(4, takeSentReplicas());
+
+        //when the cache still has the replicas from before the scaling was sent
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 3);
+
+        //then the cache is not trusted as it does not match the sent replicas
+        assertEquals(3, takeSentReplicas());
+    }
+
+    @Test
+    void sendOnlyLatestReplicasWhileScalingIsInFlight() throws InterruptedException {
+        //given the first request does not return until it is released
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        apiServer = chain -> {
+            if (inFlight.getCount() > 0) {
+                inFlight.countDown();
+                await(release);
+            }
+            return respond(chain.request(), 200);
+        };
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 2);
+        assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+        //when
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 3);
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 4);
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 5);
+        release.countDown();
+
+        //then
+        assertEquals(2, takeSentReplicas());
+        assertEquals(5, takeSentReplicas());
+        assertNull(sentReplicas.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void retryFailedScaling() throws InterruptedException {
+        //given
+        AtomicInteger failures = new AtomicInteger(1);
+        apiServer = chain -> respond(chain.request(), failures.getAndDecrement() > 0 ? 500 : 200);
+
+        //when
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 6);
+
+        //then
+        assertEquals(6, takeSentReplicas());
+        assertEquals(6, takeSentReplicas());
+        assertNull(sentReplicas.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void dispatchAgainIfReplicasArePendingWhenScalingStops() throws InterruptedException {
+        //given the scaling thread is interrupted while its failed request is still pending for a retry
+        AtomicInteger failures = new AtomicInteger(1);
+        apiServer = chain -> {
+            if (failures.getAndDecrement() > 0) {
+                Thread.currentThread()
+                      .interrupt();
+                return respond(chain.request(), 500);
+            }
+            return respond(chain.request(), 200);
+        };
+
+        //when
+        systemUnderTest.scaleDeployment(NAMESPACE, DEPLOYMENT, 7);
+
+        //then the pending replicas are sent by a new scaling task
+        assertEquals(7, takeSentReplicas());
+        assertEquals(7, takeSentReplicas());
+        assertNull(sentReplicas.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private int takeSentReplicas() throws InterruptedException {
+        final Integer replicas = sentReplicas.poll(5, TimeUnit.SECONDS);
+        assertNotNull(replicas, "No scale request was sent");
+        return replicas;
+    }
+
+    private static int getReplicas(final Request request) throws IOException {
+        final Buffer body = new Buffer();
+        request.body()
+               .writeTo(body);
+        final String patch = body.readUtf8();
+        return Integer.parseInt(patch.replaceAll(".*\"value\":(\\d+).*", "$1"));
+    }
+
+    private static Response respond(final Request request, final int code) {
+        return new Response.Builder().request(request)
+                                     .protocol(Protocol.HTTP_1_1)
+                                     .code(code)
+                                     .message(code == 200 ? "OK" : "Internal Server Error")
+                                     .body(ResponseBody.create("{\"spec\":{\"replicas\":1}}",
+                                                               MediaType.get("application/json")))
+                                     .build();
+    }
+
+    private static void await(final CountDownLatch latch) throws IOException {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.schoeniu.maha.api;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.observability.MetricManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.SqsException;
+
+class SqsApiTest {
+
+    private final SqsAsyncClient sqsAsyncClient = mock(SqsAsyncClient.class);
+    private final CircuitBreakerRegistry circuitBreakers = mock(CircuitBreakerRegistry.class);
+
+    private final SqsApi systemUnderTest = new SqsApi(sqsAsyncClient,
+                                                      new MetricManager(new SimpleMeterRegistry(), "maha"),
+                                                      circuitBreakers);
+
+    @BeforeEach
+    void setUp() {
+        when(circuitBreakers.tryAcquire("sqs")).thenReturn(true);
+    }
+
+    @Test
+    void clientErrorDoesNotCountAgainstCircuitBreaker() {
+        //given
+        QueueDoesNotExistException clientError = QueueDoesNotExistException.builder()
+                                                                           .statusCode(400)
+                                                                           .build();
+        when(sqsAsyncClient.getQueueAttributes(any(GetQueueAttributesRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(clientError));
+
+        //when
+        systemUnderTest.getQueueMetricsAsync("MISSING");
+
+        //then
+        verify(circuitBreakers).record("sqs", true);
+    }
+
+    @Test
+    void serverErrorsAndTimeoutsCountAgainstCircuitBreaker() {
+        //given
+        SqsException serverError = (SqsException) SqsException.builder()
+                                                              .statusCode(503)
+                                                              .build();
+        when(sqsAsyncClient.getQueueAttributes(any(GetQueueAttributesRequest.class)))
+                .thenReturn(CompletableFuture.failedFuture(serverError))
+                .thenReturn(CompletableFuture.failedFuture(ApiCallTimeoutException.create(700)));
+
+        //when
+        systemUnderTest.getQueueMetricsAsync("TRIGGER");
+        systemUnderTest.getQueueMetricsAsync("TRIGGER");
+
+        //then
+        verify(circuitBreakers, times(2)).record("sqs", false);
+    }
+
+}
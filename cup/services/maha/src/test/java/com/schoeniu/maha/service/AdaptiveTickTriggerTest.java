@@ -0,0 +1,75 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import com.schoeniu.maha.observability.MetricManager;
+
+class AdaptiveTickTriggerTest {
+
+    private static final Instant START = Instant.parse("2023-01-01T00:00:00Z");
+
+    private final AdaptiveTickTrigger systemUnderTest = new AdaptiveTickTrigger(mock(MetricManager.class),
+                                                                                250,
+                                                                                1000,
+                                                                                5000,
+                                                                                0.1F);
+
+    @Test
+    void shortenIntervalWhileDepthsChangeFast() {
+        //given
+        systemUnderTest.recordQueueDepths(Map.of("A", 100));
+        systemUnderTest.recordQueueDepths(Map.of("A", 200));
+
+        //when
+        Instant next = systemUnderTest.nextExecution(createContext(START, START.plusMillis(100)));
+
+        //then
+        assertEquals(START.plusMillis(250), next);
+    }
+
+    @Test
+    void lengthenIntervalWhileIdle() {
+        //given
+        systemUnderTest.recordQueueDepths(Map.of("A", 0));
+
+        //when
+        Instant first = systemUnderTest.nextExecution(createContext(START, START.plusMillis(100)));
+        Instant second = systemUnderTest.nextExecution(createContext(first, first.plusMillis(100)));
+        Instant third = systemUnderTest.nextExecution(createContext(second, second.plusMillis(100)));
+        Instant fourth = systemUnderTest.nextExecution(createContext(third, third.plusMillis(100)));
+
+        //then
+        assertEquals(START.plusMillis(2000), first);
+        assertEquals(first.plusMillis(4000), second);
+        assertEquals(second.plusMillis(5000), third);
+        assertEquals(third.plusMillis(5000), fourth);
+    }
+
+    @Test
+    void skipMissedTicks() {
+        //given
+        systemUnderTest.recordQueueDepths(Map.of("A", 100));
+
+        //when
+        Instant next = systemUnderTest.nextExecution(createContext(START, START.plusMillis(3500)));
+
+        //then
+        assertEquals(START.plusMillis(4000), next);
+    }
+
+    private SimpleTriggerContext createContext(final Instant scheduled, final Instant completion) {
+        SimpleTriggerContext context = new SimpleTriggerContext(Clock.fixed(completion, ZoneOffset.UTC));
+        context.update(scheduled, scheduled, completion);
+        return context;
+    }
+
+}
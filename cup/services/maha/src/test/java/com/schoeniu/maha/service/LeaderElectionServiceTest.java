@@ -0,0 +1,104 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.observability.MetricManager;
+
+import io.kubernetes.client.openapi.models.V1Lease;
+import io.kubernetes.client.openapi.models.V1LeaseSpec;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+
+class LeaderElectionServiceTest {
+
+    private static final String NAMESPACE = "cup";
+    private static final String LEASE = "maha-leader";
+
+    private final K8sApi k8SApi = mock(K8sApi.class);
+
+    private final LeaderElectionService systemUnderTest = new LeaderElectionService(k8SApi,
+                                                                                    mock(MetricManager.class),
+                                                                                    true,
+                                                                                    NAMESPACE,
+                                                                                    LEASE,
+                                                                                    15,
+                                                                                    "maha-1");
+
+    @Test
+    void acquireMissingLease() throws Exception {
+        //given
+        when(k8SApi.readLease(NAMESPACE, LEASE)).thenReturn(Optional.empty());
+
+        //when
+        systemUnderTest.acquireOrRenew();
+
+        //then
+        ArgumentCaptor<V1Lease> lease = ArgumentCaptor.forClass(V1Lease.class);
+        verify(k8SApi).createLease(eq(NAMESPACE), lease.capture());
+        assertEquals("maha-1",
+                     lease.getValue()
+                          .getSpec()
+                          .getHolderIdentity());
+        assertTrue(systemUnderTest.isLeader());
+    }
+
+    @Test
+    void standByWhileLeaseIsHeld() throws Exception {
+        //given
+        when(k8SApi.readLease(NAMESPACE, LEASE)).thenReturn(Optional.of(createLease("maha-2")));
+
+        //when
+        systemUnderTest.acquireOrRenew();
+
+        //then
+        verify(k8SApi, never()).replaceLease(any(), any());
+        assertFalse(systemUnderTest.isLeader());
+    }
+
+    @Test
+    void takeOverReleasedLease() throws Exception {
+        //given
+        when(k8SApi.readLease(NAMESPACE, LEASE)).thenReturn(Optional.of(createLease(null)));
+
+        //when
+        systemUnderTest.acquireOrRenew();
+
+        //then
+        ArgumentCaptor<V1Lease> lease = ArgumentCaptor.forClass(V1Lease.class);
+        verify(k8SApi).replaceLease(eq(NAMESPACE), lease.capture());
+        assertEquals("maha-1",
+                     lease.getValue()
+                          .getSpec()
+                          .getHolderIdentity());
+        assertEquals(2,
+                     lease.getValue()
+                          .getSpec()
+                          .getLeaseTransitions());
+        assertTrue(systemUnderTest.isLeader());
+    }
+
+    private V1Lease createLease(final String holder) {
+        return new V1Lease().metadata(new V1ObjectMeta().name(LEASE)
+                                                        .namespace(NAMESPACE)
+                                                        .resourceVersion("1"))
+                            .spec(new V1LeaseSpec().holderIdentity(holder)
+                                                   .leaseDurationSeconds(15)
+                                                   .renewTime(OffsetDateTime.now())
+                                                   .leaseTransitions(1));
+    }
+
+}
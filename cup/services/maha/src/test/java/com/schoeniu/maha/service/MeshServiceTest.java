@@ -0,0 +1,204 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.MeshConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.ScalingState;
+
+class MeshServiceTest {
+
+    @Test
+    void createDefaultAndAdditionalMeshes() {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        MeshConfig other = new MeshConfig();
+        other.setNamespace("other");
+        other.setQueuesConsumedFrom(createQueues("OTHER_REQUEST"));
+        config.getMeshes()
+              .put("other", other);
+
+        //when
+        MeshService systemUnderTest = new MeshService(config, "cup", "");
+
+        //then
+        assertEquals(2,
+                     systemUnderTest.getMeshes()
+                                    .size());
+        Mesh defaultMesh = systemUnderTest.getMesh(MeshService.DEFAULT_MESH);
+        assertEquals("cup", defaultMesh.getNamespace());
+        assertEquals(0,
+                     defaultMesh.getTopology()
+                                .getQueueIndex("EXT_REQUEST"));
+        Mesh otherMesh = systemUnderTest.getMesh("other");
+        assertEquals("other", otherMesh.getNamespace());
+        assertEquals(-1,
+                     otherMesh.getTopology()
+                              .getQueueIndex("EXT_REQUEST"));
+        assertEquals(otherMesh,
+                     systemUnderTest.findMeshInNamespace("other")
+                                    .orElseThrow());
+    }
+
+    @Test
+    void rejectQueueConsumedInTwoMeshes() {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        MeshConfig other = new MeshConfig();
+        other.setNamespace("other");
+        other.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        config.getMeshes()
+              .put("other", other);
+
+        //when & then
+        assertThrows(IllegalStateException.class, () -> new MeshService(config, "cup", ""));
+    }
+
+    @Test
+    void rejectPrometheusSourceWithoutVisibleQuery() {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.getStrategy()
+              .setQueueMetricsSource(QueueMetricsSourceType.PROMETHEUS);
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+
+        //when & then
+        assertThrows(IllegalStateException.class, () -> new MeshService(config, "cup", ""));
+        assertEquals(1,
+                     new MeshService(config, "cup", "queue_depth").getMeshes()
+                                                                  .size());
+    }
+
+    @Test
+    void reloadCarriesOverStateOfKeptServices() {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        MeshService systemUnderTest = new MeshService(config, "cup", "");
+        systemUnderTest.getMesh(MeshService.DEFAULT_MESH)
+                       .getState()
+                       .getUpscaleTimes()[0] = 1000L;
+
+        ScalingConfigProperties reloaded = new ScalingConfigProperties();
+        reloaded.setStrategy(new StrategyConfig());
+        reloaded.setQueuesConsumedFrom(createQueues("NEW_REQUEST"));
+        reloaded.getQueuesConsumedFrom()
+                .putAll(createQueues("EXT_REQUEST"));
+        reloaded.getQueuesConsumedFrom()
+                .get("EXT_REQUEST")
+                .setConsumptionRate(200);
+
+        //when
+        Set<String> changedQueues = systemUnderTest.prepareReload(reloaded);
+        Mesh beforeApply = systemUnderTest.getMesh(MeshService.DEFAULT_MESH);
+        systemUnderTest.applyReload();
+
+        //then
+        assertEquals(Set.of("EXT_REQUEST"), changedQueues);
+        assertEquals(1,
+                     beforeApply.getTopology()
+                                .getNumberOfQueues());
+        Mesh mesh = systemUnderTest.getMesh(MeshService.DEFAULT_MESH);
+        assertEquals(2,
+                     mesh.getTopology()
+                         .getNumberOfQueues());
+        int service = mesh.getTopology()
+                          .getServiceIndex("service-EXT_REQUEST");
+        assertEquals(1000L,
+                     mesh.getState()
+                         .getUpscaleTimes()[service]);
+        assertEquals(ScalingState.NEVER,
+                     mesh.getState()
+                         .getUpscaleTimes()[mesh.getTopology()
+                                                .getServiceIndex("service-NEW_REQUEST")]);
+    }
+
+    @Test
+    void reloadIsDeferredWhileMeshIsInUse() throws Exception {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        MeshService systemUnderTest = new MeshService(config, "cup", "");
+        Mesh current = systemUnderTest.getMesh(MeshService.DEFAULT_MESH);
+
+        ScalingConfigProperties reloaded = new ScalingConfigProperties();
+        reloaded.setStrategy(new StrategyConfig());
+        reloaded.setQueuesConsumedFrom(createQueues("NEW_REQUEST"));
+        systemUnderTest.prepareReload(reloaded);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> current.getLock()
+                                         .lock())
+                    .get();
+
+            //when the mesh is still scheduled by another thread
+            systemUnderTest.applyReload();
+
+            //then
+            assertSame(current, systemUnderTest.getMesh(MeshService.DEFAULT_MESH));
+
+            //when the schedule finished
+            executor.submit(() -> current.getLock()
+                                         .unlock())
+                    .get();
+            systemUnderTest.applyReload();
+
+            //then
+            assertEquals(0,
+                         systemUnderTest.getMesh(MeshService.DEFAULT_MESH)
+                                        .getTopology()
+                                        .getQueueIndex("NEW_REQUEST"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectInvalidReload() {
+        //given
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(createQueues("EXT_REQUEST"));
+        MeshService systemUnderTest = new MeshService(config, "cup", "");
+
+        //when & then
+        assertThrows(IllegalStateException.class, () -> systemUnderTest.prepareReload(new ScalingConfigProperties()));
+        systemUnderTest.applyReload();
+        assertEquals(0,
+                     systemUnderTest.getMesh(MeshService.DEFAULT_MESH)
+                                    .getTopology()
+                                    .getQueueIndex("EXT_REQUEST"));
+    }
+
+    private Map<String, ConsumerServiceConfig> createQueues(final String queue) {
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName("service-" + queue);
+        consumer.setConsumptionRate(100);
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put(queue, consumer);
+        return queues;
+    }
+
+}
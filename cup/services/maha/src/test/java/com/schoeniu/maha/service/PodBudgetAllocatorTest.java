@@ -0,0 +1,135 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PodBudgetAllocatorTest {
+
+    private final PodBudgetAllocator systemUnderTest =
+            new PodBudgetAllocator(new MetricManager(new SimpleMeterRegistry(), "maha"));
+
+    @Test
+    void allocateBudgetToBottleneck() {
+        //given
+        Mesh mesh = createMesh(13);
+        setRequiredPods(mesh, 5, 17, 4);
+
+        //when
+        systemUnderTest.allocate(mesh);
+
+        //then every service consumes about half of its required rates
+        assertArrayEquals(new int[] { 3, 8, 2 },
+                          mesh.getState()
+                              .getRequiredPods());
+    }
+
+    @Test
+    void stopAllocatingWhenBottleneckDoesNotFit() {
+        //given
+        Mesh mesh = createMesh(13);
+        mesh.getStrategy()
+            .getPodBudget()
+            .getPodCosts()
+            .put("cup-history", 4F);
+        setRequiredPods(mesh, 5, 17, 4);
+
+        //when
+        systemUnderTest.allocate(mesh);
+
+        //then cup-history only has a third of its required pods, so more pods elsewhere would not help
+        assertArrayEquals(new int[] { 1, 2, 1 },
+                          mesh.getState()
+                              .getRequiredPods());
+    }
+
+    @Test
+    void keepRequiredPodsWithinBudget() {
+        //given
+        Mesh mesh = createMesh(30);
+        setRequiredPods(mesh, 5, 17, 4);
+
+        //when
+        systemUnderTest.allocate(mesh);
+
+        //then
+        assertArrayEquals(new int[] { 5, 17, 4 },
+                          mesh.getState()
+                              .getRequiredPods());
+    }
+
+    @Test
+    void keepAllocatingToServicesNotBehindBottleneck() {
+        //given cup-vehicle-data consumes its own origin queue instead of messages of cup-trigger
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put("TRIGGER", createConsumer("cup-trigger", "HISTORY"));
+        queues.put("HISTORY", createConsumer("cup-history"));
+        queues.put("VEHICLE_DATA_REQUEST", createConsumer("cup-vehicle-data"));
+        Mesh mesh = new Mesh("default", "cup", createMesh(13).getStrategy(), queues);
+        mesh.getStrategy()
+            .getPodBudget()
+            .getPodCosts()
+            .put("cup-history", 4F);
+        setRequiredPods(mesh, 5, 17, 4);
+
+        //when
+        systemUnderTest.allocate(mesh);
+
+        //then cup-trigger is blocked with cup-history, the rest of the budget goes to cup-vehicle-data
+        assertArrayEquals(new int[] { 1, 2, 4 },
+                          mesh.getState()
+                              .getRequiredPods());
+        assertArrayEquals(new int[] { 1, 2, 4 },
+                          mesh.getState()
+                              .getAllocatedPods());
+    }
+
+    private static void setRequiredPods(final Mesh mesh, final int... requiredPods) {
+        System.arraycopy(requiredPods,
+                         0,
+                         mesh.getState()
+                             .getRequiredPods(),
+                         0,
+                         requiredPods.length);
+    }
+
+    private static Mesh createMesh(final float budget) {
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put("TRIGGER", createConsumer("cup-trigger", "HISTORY", "VEHICLE_DATA_REQUEST"));
+        queues.put("HISTORY", createConsumer("cup-history"));
+        queues.put("VEHICLE_DATA_REQUEST", createConsumer("cup-vehicle-data"));
+        StrategyConfig strategy = new StrategyConfig();
+        strategy.setMaxNumberOfPods(20);
+        strategy.getPodBudget()
+                .setEnabled(true);
+        strategy.getPodBudget()
+                .setTotal(budget);
+        return new Mesh("default", "cup", strategy, queues);
+    }
+
+    private static ConsumerServiceConfig createConsumer(final String service, final String... producedQueues) {
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName(service);
+        consumer.setConsumptionRate(220);
+        consumer.setQueuesProducedTo(new LinkedHashMap<>());
+        for (String producedQueue : producedQueues) {
+            ProducerQueueConfig edge = new ProducerQueueConfig();
+            edge.setRelativeProductionRate(1);
+            consumer.getQueuesProducedTo()
+                    .put(producedQueue, edge);
+        }
+        return consumer;
+    }
+
+}
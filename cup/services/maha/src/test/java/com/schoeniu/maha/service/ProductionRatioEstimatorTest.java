@@ -0,0 +1,140 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ProductionRatioEstimatorTest {
+
+    private static final String SERVICE = "cup-vehicle-data";
+
+    private final MeshService meshService = mock(MeshService.class);
+    private final PrometheusApi prometheusApi = mock(PrometheusApi.class);
+
+    private final ProductionRatioEstimator systemUnderTest =
+            new ProductionRatioEstimator(meshService,
+                                         prometheusApi,
+                                         new MetricManager(new SimpleMeterRegistry(), "maha"));
+
+    private Mesh mesh;
+
+    @BeforeEach
+    void setUp() {
+        // the service consumes from two queues and produces to VEHICLE_DATA_RESPONSE from both of them
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put("VEHICLE_DATA_REQUEST", createConsumer(1));
+        queues.put("VEHICLE_DATA_RETRY", createConsumer(2));
+        queues.put("VEHICLE_DATA_RESPONSE", new ConsumerServiceConfig());
+        queues.get("VEHICLE_DATA_RESPONSE")
+              .setServiceName("cup-trigger");
+        StrategyConfig strategy = new StrategyConfig();
+        strategy.getRatioLearning()
+                .setEnabled(true);
+        strategy.getRatioLearning()
+                .setMinSamples(3);
+        mesh = new Mesh("default", "cup", strategy, queues);
+        when(meshService.getMeshes()).thenReturn(List.of(mesh));
+    }
+
+    @Test
+    void splitProductionBetweenConsumedQueues() {
+        //given 10 + 2 * 20 = 50 messages per minute are expected, but 100 are produced
+        setRates(100, 10, 20);
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            systemUnderTest.update();
+        }
+
+        //then both configured ratios are doubled
+        assertEquals(2F, getRate("VEHICLE_DATA_REQUEST", 1), 0.001F);
+        assertEquals(4F, getRate("VEHICLE_DATA_RETRY", 2), 0.001F);
+    }
+
+    @Test
+    void useConfiguredRatioBeforeMinSamples() {
+        //given
+        setRates(100, 10, 20);
+
+        //when
+        systemUnderTest.update();
+        systemUnderTest.update();
+
+        //then
+        assertEquals(1F, getRate("VEHICLE_DATA_REQUEST", 1), 0.001F);
+
+        //when
+        systemUnderTest.update();
+
+        //then
+        assertEquals(2F, getRate("VEHICLE_DATA_REQUEST", 1), 0.001F);
+    }
+
+    @Test
+    void fallBackToConfiguredRatio() {
+        //given too few messages are consumed from VEHICLE_DATA_RETRY to measure its ratio
+        setRates(100, 10, 0.5F);
+
+        //when
+        for (int i = 0; i < 3; i++) {
+            systemUnderTest.update();
+        }
+
+        //then
+        assertEquals(2F, getRate("VEHICLE_DATA_RETRY", 2), 0.001F);
+
+        //when the learning is disabled
+        mesh.getStrategy()
+            .getRatioLearning()
+            .setEnabled(false);
+
+        //then the measured ratio is ignored
+        assertEquals(1F, getRate("VEHICLE_DATA_REQUEST", 1), 0.001F);
+    }
+
+    private void setRates(final float produced, final float consumedRequests, final float consumedRetries) {
+        when(prometheusApi.query(contains("produced_to_queue"))).thenReturn(List.of(createSample(
+                "VEHICLE_DATA_RESPONSE",
+                produced)));
+        when(prometheusApi.query(contains("consumed_from_queue"))).thenReturn(List.of(createSample(
+                "VEHICLE_DATA_REQUEST",
+                consumedRequests), createSample("VEHICLE_DATA_RETRY", consumedRetries)));
+    }
+
+    private float getRate(final String queue, final float configuredRate) {
+        return systemUnderTest.getRelativeProductionRate(mesh, queue, "VEHICLE_DATA_RESPONSE", configuredRate);
+    }
+
+    private static Sample createSample(final String queue, final float value) {
+        return new Sample(Map.of("application", SERVICE, "queue", queue), value);
+    }
+
+    private static ConsumerServiceConfig createConsumer(final float relativeProductionRate) {
+        ProducerQueueConfig edge = new ProducerQueueConfig();
+        edge.setRelativeProductionRate(relativeProductionRate);
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName(SERVICE);
+        consumer.setConsumptionRate(220);
+        consumer.setQueuesProducedTo(new LinkedHashMap<>(Map.of("VEHICLE_DATA_RESPONSE", edge)));
+        return consumer;
+    }
+
+}
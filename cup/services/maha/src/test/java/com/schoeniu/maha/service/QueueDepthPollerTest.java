@@ -0,0 +1,100 @@
+package com.schoeniu.maha.service;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+
+import com.schoeniu.maha.api.ElasticMqStatsApi;
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.api.SqsApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.QueueMetricsSourceType;
+
+import io.kubernetes.client.openapi.ApiClient;
+
+@ActiveProfiles("test")
+@SpringBootTest
+class QueueDepthPollerTest {
+
+    private static final String MESH = MeshService.DEFAULT_MESH;
+
+    @MockBean
+    private ApiClient apiClient;
+    @MockBean
+    private K8sApi k8SApi;
+    @MockBean
+    private SqsApi sqsApi;
+    @MockBean
+    private ElasticMqStatsApi elasticMqStatsApi;
+
+    @Autowired
+    private QueueDepthPoller systemUnderTest;
+
+    @Test
+    void pollQueriesAllQueues() {
+        //given
+        when(sqsApi.getQueueMetricsAsync("POLL_A")).thenReturn(messages(10));
+        when(sqsApi.getQueueMetricsAsync("POLL_B")).thenReturn(messages(20));
+
+        //when
+        Map<String, Integer> result = systemUnderTest.poll(MESH,
+                                                           QueueMetricsSourceType.SQS,
+                                                           List.of("POLL_A", "POLL_B"));
+
+        //then
+        assertEquals(Map.of("POLL_A", 10, "POLL_B", 20), result);
+    }
+
+    @Test
+    void pollFallsBackToLastKnownValueOnMissedDeadline() {
+        //given
+        when(sqsApi.getQueueMetricsAsync("POLL_STALE")).thenReturn(messages(50));
+        systemUnderTest.poll(MESH, QueueMetricsSourceType.SQS, List.of("POLL_STALE"));
+        when(sqsApi.getQueueMetricsAsync("POLL_STALE")).thenReturn(new CompletableFuture<>());
+        when(sqsApi.getQueueMetricsAsync("POLL_FAILED")).thenReturn(CompletableFuture.failedFuture(
+                new RuntimeException()));
+
+        //when
+        Map<String, Integer> result = systemUnderTest.poll(MESH,
+                                                           QueueMetricsSourceType.SQS,
+                                                           List.of("POLL_STALE", "POLL_FAILED"));
+
+        //then the queue which never answered is unknown instead of empty
+        assertEquals(Map.of("POLL_STALE", 50), result);
+    }
+
+    @Test
+    void pollFetchesAllQueuesFromElasticMqInOneRequest() {
+        //given
+        when(elasticMqStatsApi.getQueueMetrics()).thenReturn(Map.of("POLL_A",
+                                                                    new QueueMetrics(10, 2, 0),
+                                                                    "POLL_B",
+                                                                    new QueueMetrics(20, 0, 1)));
+
+        //when
+        Map<String, Integer> result = systemUnderTest.poll(MESH,
+                                                           QueueMetricsSourceType.ELASTICMQ_STATS,
+                                                           List.of("POLL_A", "POLL_B", "POLL_MISSING"));
+
+        //then the queue missing in the response is unknown
+        assertEquals(Map.of("POLL_A", 10, "POLL_B", 20), result);
+        verify(elasticMqStatsApi, times(1)).getQueueMetrics();
+    }
+
+    private static CompletableFuture<QueueMetrics> messages(final int visible) {
+        return completedFuture(new QueueMetrics(visible, 0, 0));
+    }
+
+}
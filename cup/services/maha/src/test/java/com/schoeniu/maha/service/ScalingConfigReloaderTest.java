@@ -0,0 +1,119 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.topology.Mesh;
+
+import io.kubernetes.client.openapi.ApiException;
+import io.kubernetes.client.openapi.models.V1ConfigMap;
+import io.kubernetes.client.openapi.models.V1ObjectMeta;
+
+class ScalingConfigReloaderTest {
+
+    private static final String NAMESPACE = "cup";
+    private static final String CONFIG_MAP = "scaling-config.yaml";
+    private static final String DATA_KEY = "application-k8s.yaml";
+
+    private final K8sApi k8SApi = mock(K8sApi.class);
+    private final ConsumptionRateEstimator consumptionRateEstimator = mock(ConsumptionRateEstimator.class);
+    private final ProductionRatioEstimator productionRatioEstimator = mock(ProductionRatioEstimator.class);
+
+    private MeshService meshService;
+    private ScalingConfigReloader systemUnderTest;
+
+    @BeforeEach
+    void setUp() {
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName("cup-trigger");
+        consumer.setConsumptionRate(220);
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put("EXT_REQUEST", consumer);
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setStrategy(new StrategyConfig());
+        config.setQueuesConsumedFrom(queues);
+        meshService = new MeshService(config, NAMESPACE, "");
+        systemUnderTest = new ScalingConfigReloader(k8SApi,
+                                                    meshService,
+                                                    consumptionRateEstimator,
+                                                    productionRatioEstimator,
+                                                    true,
+                                                    NAMESPACE,
+                                                    CONFIG_MAP,
+                                                    DATA_KEY);
+    }
+
+    @Test
+    void reloadNewVersionOnce() throws ApiException {
+        //given
+        when(k8SApi.readConfigMap(NAMESPACE, CONFIG_MAP)).thenReturn(createConfigMap("1", """
+                scaling-config:
+                  strategy:
+                    scalingEnabled: true
+                  queuesConsumedFrom:
+                    EXT_REQUEST:
+                      serviceName: "cup-trigger"
+                      consumptionRate: 110.0
+                      queuesProducedTo:
+                        TRIGGER:
+                          relativeProductionRate: 1.0
+                """));
+
+        //when
+        systemUnderTest.reload();
+        systemUnderTest.reload();
+        meshService.applyReload();
+
+        //then
+        verify(consumptionRateEstimator, times(1)).reset(Set.of("EXT_REQUEST"));
+        Mesh mesh = meshService.getMesh(MeshService.DEFAULT_MESH);
+        assertEquals(110F,
+                     mesh.getTopology()
+                         .getConfiguredConsumptionRate(0));
+        assertEquals(2,
+                     mesh.getTopology()
+                         .getNumberOfQueues());
+    }
+
+    @Test
+    void rejectInvalidVersion() throws ApiException {
+        //given
+        when(k8SApi.readConfigMap(NAMESPACE, CONFIG_MAP)).thenReturn(createConfigMap("2", """
+                other-config:
+                  enabled: true
+                """));
+
+        //when
+        systemUnderTest.reload();
+        meshService.applyReload();
+
+        //then
+        verify(consumptionRateEstimator, times(0)).reset(any());
+        assertEquals(220F,
+                     meshService.getMesh(MeshService.DEFAULT_MESH)
+                                .getTopology()
+                                .getConfiguredConsumptionRate(0));
+    }
+
+    private static Optional<V1ConfigMap> createConfigMap(final String resourceVersion, final String yaml) {
+        return Optional.of(new V1ConfigMap().metadata(new V1ObjectMeta().resourceVersion(resourceVersion))
+                                            .data(Map.of(DATA_KEY, yaml)));
+    }
+
+}
@@ -1,14 +1,22 @@
 package com.schoeniu.maha.service;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,16 +24,28 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ActiveProfiles;
 
+import com.schoeniu.maha.api.CupApi;
 import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.api.QueueMetrics;
 import com.schoeniu.maha.api.SqsApi;
 import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.DownscaleConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.RateLearningConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.VerticalScalingConfig;
+import com.schoeniu.maha.topology.ScalingState;
 
 import io.kubernetes.client.openapi.ApiClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @ActiveProfiles("test")
 @SpringBootTest
 class ScalingScheduleTest {
 
+    private static final String NAMESPACE = "cup";
+
     @Autowired
     private ScalingConfigProperties scalingConfig;
 
@@ -35,6 +55,22 @@ class ScalingScheduleTest {
     private K8sApi k8SApi;
     @MockBean
     private SqsApi sqsApi;
+    @MockBean
+    private PrometheusApi prometheusApi;
+    @MockBean
+    private CupApi cupApi;
+
+    @Autowired
+    private ConsumptionRateEstimator consumptionRateEstimator;
+
+    @Autowired
+    private WaitTimeEstimator waitTimeEstimator;
+
+    @Autowired
+    private MeshService meshService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     @Autowired
     private ScalingSchedule systemUnderTest;
@@ -44,26 +80,26 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(true);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("EXT_REQUEST")).thenReturn(1000);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
 
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
 
-        verify(k8SApi).getReplicasPerDeployment();
-        verify(k8SApi).scaleDeployment("cup-trigger", 5);
-        verify(k8SApi).scaleDeployment("cup-process", 5);
-        verify(k8SApi).scaleDeployment("cup-cache", 5);
-        verify(k8SApi).scaleDeployment("cup-history", 17);
-        verify(k8SApi).scaleDeployment("cup-vehicle-data", 4);
-        verify(k8SApi).scaleDeployment("cup-rollout", 5);
+        verify(k8SApi).getReplicasPerDeployment(NAMESPACE);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-trigger", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 13);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-cache", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 17);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-vehicle-data", 4);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-rollout", 5);
 
     }
 
@@ -72,27 +108,154 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(true);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("EXT_REQUEST")).thenReturn(1000);
-        when(sqsApi.getNumberOfMessages("CACHE_RESPONSE")).thenReturn(500);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+        when(sqsApi.getQueueMetricsAsync("CACHE_RESPONSE")).thenReturn(messages(500));
 
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi).getReplicasPerDeployment();
-        verify(k8SApi).scaleDeployment("cup-trigger", 5);
-        verify(k8SApi).scaleDeployment("cup-process", 7);
-        verify(k8SApi).scaleDeployment("cup-cache", 5);
-        verify(k8SApi).scaleDeployment("cup-history", 20);
-        verify(k8SApi).scaleDeployment("cup-vehicle-data", 5);
-        verify(k8SApi).scaleDeployment("cup-rollout", 7);
+        verify(k8SApi).getReplicasPerDeployment(NAMESPACE);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-trigger", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 17);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-cache", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 20);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-vehicle-data", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-rollout", 7);
+
+    }
+
+    @Test
+    void scheduleExportsDecision() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        //when
+        systemUnderTest.schedule();
+
+        //then
+        assertEquals(1000, getGauge("application:origin_rate", "queue", "EXT_REQUEST"));
+        assertEquals(0, getGauge("application:follow_up_rate", "queue", "EXT_REQUEST"));
+        assertEquals(1000, getGauge("application:follow_up_rate", "queue", "TRIGGER"));
+        assertEquals(3700, getGauge("application:total_rate", "queue", "HISTORY"), 1);
+        assertEquals(13, getGauge("application:required_pods", "service", "cup-process"));
+        assertEquals(1, getGauge("application:current_pods", "service", "cup-process"));
+        assertEquals(13, getGauge("application:target_pods", "service", "cup-process"));
+    }
+
+    @Test
+    void scheduleInShadowModeExportsDifferenceWithoutScaling() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        scalingConfig.getStrategy()
+                     .setShadowMode(true);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 2));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+        double coldStartsBefore = getColdStartedPods("cup-process");
+
+        try {
+            //when
+            systemUnderTest.schedule();
+            systemUnderTest.schedule();
+
+            //then
+            verify(k8SApi, never()).scaleDeployment(any(), any(), anyInt());
+            assertEquals(coldStartsBefore, getColdStartedPods("cup-process"));
+            assertEquals(2, getGauge("application:shadow_actual_pods", "service", "cup-process"));
+            assertEquals(11, getGauge("application:shadow_recommended_minus_actual_pods", "service", "cup-process"));
+            assertEquals(15, getGauge("application:shadow_recommended_minus_actual_pods", "service", "cup-history"));
+        } finally {
+            scalingConfig.getStrategy()
+                         .setShadowMode(false);
+        }
+    }
+
+    @Test
+    void scheduleKeepsServiceAtMaxPodsWithoutScalingIt() {
+        //given cup-history needs more than the max number of pods
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+        when(sqsApi.getQueueMetricsAsync("CACHE_RESPONSE")).thenReturn(messages(500));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        currentScale.put("cup-history", 20);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+        ScalingState state = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                        .getState();
+        int history = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                 .getTopology()
+                                 .getServiceIndex("cup-history");
+        state.getUpscaleTimes()[history] = ScalingState.NEVER;
 
+        //when
+        systemUnderTest.schedule();
+
+        //then the service is not scaled, but protected from downscaling while the demand is above the max
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-history"), anyInt());
+        assertNotEquals(ScalingState.NEVER, state.getUpscaleTimes()[history]);
+    }
+
+    @Test
+    void scheduleScalesDownToPodBudgetDespiteStabilization() {
+        //given cup-history was just upscaled and keeps its pods without a budget
+        scalingConfig.getStrategy()
+                     .setDownScaleStabilizationSeconds(600);
+        scalingConfig.getStrategy()
+                     .getPodBudget()
+                     .setEnabled(true);
+        scalingConfig.getStrategy()
+                     .getPodBudget()
+                     .setTotal(8);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        currentScale.put("cup-history", 10);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+        ScalingState state = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                        .getState();
+        int history = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                 .getTopology()
+                                 .getServiceIndex("cup-history");
+        state.getUpscaleTimes()[history] = System.currentTimeMillis();
+
+        try {
+            //when
+            systemUnderTest.schedule();
+
+            //then
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 1);
+        } finally {
+            scalingConfig.getStrategy()
+                         .setDownScaleStabilizationSeconds(0);
+            scalingConfig.getStrategy()
+                         .getPodBudget()
+                         .setEnabled(false);
+            state.getUpscaleTimes()[history] = ScalingState.NEVER;
+        }
     }
 
     @Test
@@ -100,25 +263,25 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(false);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("EXT_REQUEST")).thenReturn(1000);
-        when(sqsApi.getNumberOfMessages("CACHE_RESPONSE")).thenReturn(500);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+        when(sqsApi.getQueueMetricsAsync("CACHE_RESPONSE")).thenReturn(messages(500));
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi).getReplicasPerDeployment();
-        verify(k8SApi).scaleDeployment("cup-trigger", 5);
-        verify(k8SApi).scaleDeployment("cup-process", 3);
-        verify(k8SApi, never()).scaleDeployment(eq("cup-cache"), anyInt());
-        verify(k8SApi, never()).scaleDeployment(eq("cup-vehicle-data"), anyInt());
-        verify(k8SApi, never()).scaleDeployment(eq("cup-rollout"), anyInt());
-        verify(k8SApi, never()).scaleDeployment(eq("cup-history"), anyInt());
+        verify(k8SApi).getReplicasPerDeployment(NAMESPACE);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-trigger", 5);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 3);
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-cache"), anyInt());
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-vehicle-data"), anyInt());
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-rollout"), anyInt());
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-history"), anyInt());
 
     }
 
@@ -127,21 +290,21 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(false);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("CACHE_RESPONSE")).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("VEHICLE_DATA_RESPONSE")).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("TRIGGER")).thenReturn(800);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("CACHE_RESPONSE")).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("VEHICLE_DATA_RESPONSE")).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(800));
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
         currentScale.put("cup-process", 4);
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi, never()).scaleDeployment(eq("cup-process"), anyInt());
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-process"), anyInt());
 
     }
 
@@ -150,23 +313,23 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(false);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("CACHE_RESPONSE")).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("VEHICLE_DATA_RESPONSE")).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("TRIGGER")).thenReturn(800);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("CACHE_RESPONSE")).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("VEHICLE_DATA_RESPONSE")).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(800));
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
         currentScale.put("cup-process", 3);
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi).scaleDeployment("cup-process", 4);
-        verify(k8SApi, never()).scaleDeployment("cup-process", 3);
-        verify(k8SApi, never()).scaleDeployment("cup-process", 1);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 4);
+        verify(k8SApi, never()).scaleDeployment(NAMESPACE, "cup-process", 3);
+        verify(k8SApi, never()).scaleDeployment(NAMESPACE, "cup-process", 1);
 
     }
 
@@ -175,19 +338,19 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(false);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("TRIGGER")).thenReturn(50);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(50));
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
         currentScale.put("cup-process", 2);
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi).scaleDeployment("cup-process", 1);
+        verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 1);
 
     }
 
@@ -196,19 +359,346 @@ class ScalingScheduleTest {
         //given
         scalingConfig.getStrategy()
                      .setFollowUpScalingEnabled(false);
-        when(sqsApi.getNumberOfMessages(any())).thenReturn(0);
-        when(sqsApi.getNumberOfMessages("TRIGGER")).thenReturn(60);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(60));
         Map<String, Integer> currentScale = new HashMap<>();
         scalingConfig.getQueuesConsumedFrom()
                      .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
         currentScale.put("cup-process", 2);
-        when(k8SApi.getReplicasPerDeployment()).thenReturn(currentScale);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
 
         //when
         systemUnderTest.schedule();
 
         //then
-        verify(k8SApi, never()).scaleDeployment(eq("cup-process"), anyInt());
+        verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-process"), anyInt());
+
+    }
+
+    @Test
+    void scheduleUsesLearnedConsumptionRate() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(false);
+        RateLearningConfig rateLearning = scalingConfig.getStrategy()
+                                                       .getRateLearning();
+        rateLearning.setEnabled(true);
+        rateLearning.setMinSamples(1);
+        rateLearning.setMinBacklog(1);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(880));
+        when(prometheusApi.query(any())).thenReturn(List.of(new Sample(Map.of("queue",
+                                                                              "TRIGGER",
+                                                                              "application",
+                                                                              "cup-process"), 440)));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+            consumptionRateEstimator.update();
+            systemUnderTest.schedule();
+
+            //then
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 4);
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 2);
+        } finally {
+            rateLearning.setEnabled(false);
+        }
+
+    }
+
+    @Test
+    void scheduleDrainsBacklogWithinTargetTimeAfterPodStartup() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(false);
+        scalingConfig.getStrategy()
+                     .getPodStartup()
+                     .setEnabled(true);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(440));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+
+            //then 440 messages in the 30 seconds remaining after the default startup of 30 seconds
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 4);
+        } finally {
+            scalingConfig.getStrategy()
+                         .getPodStartup()
+                         .setEnabled(false);
+        }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void scheduleKeepsWaitTimeBelowObjective() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(false);
+        scalingConfig.getStrategy()
+                     .getLatencySlo()
+                     .setEnabled(true);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("TRIGGER")).thenReturn(messages(440));
+        when(prometheusApi.query(any())).thenReturn(List.of(new Sample(Map.of("queue", "TRIGGER"), 60)));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+            waitTimeEstimator.update();
+            systemUnderTest.schedule();
+
+            //then 440 messages within the objective of 30 seconds, then twice as fast as 60 seconds were observed
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 4);
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 8);
+        } finally {
+            scalingConfig.getStrategy()
+                         .getLatencySlo()
+                         .setEnabled(false);
+        }
+
+    }
+
+    @Test
+    void scheduleDownscalesInLimitedStepsPerPeriod() {
+        //given
+        DownscaleConfig downscale = resetDownscaleState();
+        downscale.setEnabled(true);
+        downscale.setRecommendationWindowSeconds(0);
+        downscale.setMaxPodsPerPeriod(4);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 17));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+        double coldStartsBefore = getColdStartedPods("cup-process");
+
+        try {
+            //when
+            systemUnderTest.schedule();
+            systemUnderTest.schedule();
+
+            //then the second iteration is within the same period
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 13);
+        } finally {
+            downscale.setEnabled(false);
+        }
+
+    }
+
+    @Test
+    void scheduleKeepsHighestRecommendationOfWindow() {
+        //given
+        DownscaleConfig downscale = resetDownscaleState();
+        downscale.setEnabled(true);
+        downscale.setRecommendationWindowSeconds(300);
+        downscale.setMaxPercentPerPeriod(50);
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("HISTORY")).thenReturn(messages(3740))
+                                                     .thenReturn(messages(0));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+            currentScale.put("cup-history", 17);
+            systemUnderTest.schedule();
+
+            //then
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 17);
+            verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-history"), intThat(pods -> pods < 17));
+        } finally {
+            downscale.setEnabled(false);
+        }
+
+    }
+
+    @Test
+    void scheduleScalesIdleServiceToZero() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        scalingConfig.getStrategy()
+                     .getScaleToZero()
+                     .setServices(List.of("cup-history"));
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+
+            //then
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 0);
+            verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-process"), anyInt());
+        } finally {
+            scalingConfig.getStrategy()
+                         .getScaleToZero()
+                         .setServices(List.of());
+        }
+
+    }
+
+    @Test
+    void activateServiceScaledToZeroOnUpstreamMessage() {
+        //given
+        scalingConfig.getStrategy()
+                     .getScaleToZero()
+                     .setServices(List.of("cup-history", "cup-rollout"));
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("VEHICLE_DATA_RESPONSE")).thenReturn(messages(1));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        currentScale.put("cup-history", 0);
+        currentScale.put("cup-rollout", 0);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        ScalingState state = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                        .getState();
+        state.setLastActivationPoll(ScalingState.NEVER);
+
+        try {
+            //when the deployment cache does not show the new pods yet in the next poll
+            systemUnderTest.activateScaledToZeroServices();
+            state.setLastActivationPoll(ScalingState.NEVER);
+            systemUnderTest.activateScaledToZeroServices();
+
+            //then
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 1);
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-rollout", 1);
+            verify(sqsApi, never()).getQueueMetricsAsync("ROLLED_OUT");
+        } finally {
+            scalingConfig.getStrategy()
+                         .getScaleToZero()
+                         .setServices(List.of());
+            Arrays.fill(state.getActivatedFromZero(), false);
+        }
+
+    }
+
+    @Test
+    void scheduleRaisesConcurrencyBeforeAddingPods() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        VerticalScalingConfig vertical = scalingConfig.getStrategy()
+                                                      .getVertical();
+        vertical.setEnabled(true);
+        vertical.setServices(List.of("cup-history"));
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(1000));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+        when(k8SApi.getReadyPodIps(NAMESPACE, "cup-history")).thenReturn(Map.of("cup-history-1", "10.0.0.1"));
+
+        try {
+            //when
+            systemUnderTest.schedule();
+
+            //then cup-history requires 17 single threaded pods, which are 5 pods with 4 threads
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-history", 5);
+            verify(k8SApi).scaleDeployment(NAMESPACE, "cup-process", 13);
+            verify(cupApi, timeout(1000)).setConcurrency("10.0.0.1", 8080, 4);
+        } finally {
+            resetVerticalScaling(vertical);
+        }
+    }
+
+    @Test
+    void scheduleLowersConcurrencyBeforeRemovingPods() {
+        //given
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(true);
+        VerticalScalingConfig vertical = scalingConfig.getStrategy()
+                                                      .getVertical();
+        vertical.setEnabled(true);
+        vertical.setServices(List.of("cup-history"));
+        int history = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                 .getTopology()
+                                 .getServiceIndex("cup-history");
+        meshService.getMesh(MeshService.DEFAULT_MESH)
+                   .getState()
+                   .getConcurrency()[history] = 4;
+        when(sqsApi.getQueueMetricsAsync(any())).thenReturn(messages(0));
+        when(sqsApi.getQueueMetricsAsync("EXT_REQUEST")).thenReturn(messages(200));
+        Map<String, Integer> currentScale = new HashMap<>();
+        scalingConfig.getQueuesConsumedFrom()
+                     .forEach((queue, scalingConfig) -> currentScale.put(scalingConfig.getServiceName(), 1));
+        currentScale.put("cup-history", 5);
+        when(k8SApi.getReplicasPerDeployment(NAMESPACE)).thenReturn(currentScale);
+
+        try {
+            //when
+            systemUnderTest.schedule();
+
+            //then the 5 pods consume the required capacity of 3.4 single threaded pods with one thread each
+            assertEquals(1,
+                         meshService.getMesh(MeshService.DEFAULT_MESH)
+                                    .getState()
+                                    .getConcurrency()[history]);
+            verify(k8SApi, never()).scaleDeployment(eq(NAMESPACE), eq("cup-history"), anyInt());
+        } finally {
+            resetVerticalScaling(vertical);
+        }
+    }
+
+    private void resetVerticalScaling(final VerticalScalingConfig vertical) {
+        vertical.setEnabled(false);
+        vertical.setServices(List.of());
+        Arrays.fill(meshService.getMesh(MeshService.DEFAULT_MESH)
+                               .getState()
+                               .getConcurrency(), 1);
+    }
+
+    private DownscaleConfig resetDownscaleState() {
+        ScalingState state = meshService.getMesh(MeshService.DEFAULT_MESH)
+                                        .getState();
+        Arrays.fill(state.getDownscaleTimes(), ScalingState.NEVER);
+        Arrays.fill(state.getRecommendations(), null);
+        return scalingConfig.getStrategy()
+                            .getDownscale();
+    }
+
+    private double getGauge(final String name, final String tagKey, final String tagValue) {
+        return meterRegistry.get(name)
+                            .tag(tagKey, tagValue)
+                            .gauge()
+                            .value();
+    }
+
+    private double getColdStartedPods(final String service) {
+        Counter counter = meterRegistry.find("application:cold_started_pods")
+                                       .tag("mesh", MeshService.DEFAULT_MESH)
+                                       .tag("service", service)
+                                       .counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static CompletableFuture<QueueMetrics> messages(final int visible) {
+        return completedFuture(new QueueMetrics(visible, 0, 0));
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.schoeniu.maha.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.api.PrometheusApi;
+import com.schoeniu.maha.api.PrometheusApi.Sample;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.StrategyConfig;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.topology.Mesh;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class WaitTimeEstimatorTest {
+
+    private final MeshService meshService = mock(MeshService.class);
+    private final PrometheusApi prometheusApi = mock(PrometheusApi.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final WaitTimeEstimator systemUnderTest =
+            new WaitTimeEstimator(meshService, prometheusApi, new MetricManager(meterRegistry, "maha"));
+
+    @Test
+    void forgetWaitTimeOfIdleQueue() {
+        //given
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName("cup-process");
+        Map<String, ConsumerServiceConfig> queues = new LinkedHashMap<>();
+        queues.put("TRIGGER", consumer);
+        StrategyConfig strategy = new StrategyConfig();
+        strategy.getLatencySlo()
+                .setEnabled(true);
+        when(meshService.getMeshes()).thenReturn(List.of(new Mesh("default", "cup", strategy, queues)));
+        when(prometheusApi.query(any())).thenReturn(List.of(new Sample(Map.of("queue", "TRIGGER"), 60)));
+        systemUnderTest.update();
+
+        //when no messages were consumed from TRIGGER in the query window
+        when(prometheusApi.query(any())).thenReturn(List.of());
+        systemUnderTest.update();
+
+        //then
+        assertTrue(Float.isNaN(systemUnderTest.getWaitSeconds("TRIGGER")));
+        assertTrue(Double.isNaN(meterRegistry.get("application:observed_wait_seconds")
+                                             .tag("queue", "TRIGGER")
+                                             .gauge()
+                                             .value()));
+
+        //when
+        when(prometheusApi.query(any())).thenReturn(List.of(new Sample(Map.of("queue", "TRIGGER"), 5)));
+        systemUnderTest.update();
+
+        //then
+        assertEquals(5F, systemUnderTest.getWaitSeconds("TRIGGER"), 0.001F);
+    }
+
+}
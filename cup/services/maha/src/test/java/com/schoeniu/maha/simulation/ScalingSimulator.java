@@ -0,0 +1,183 @@
+package com.schoeniu.maha.simulation;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.scheduling.support.SimpleTriggerContext;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.observability.MetricManager;
+import com.schoeniu.maha.service.AdaptiveTickTrigger;
+import com.schoeniu.maha.service.ConcurrencyScaler;
+import com.schoeniu.maha.service.ConsumptionRateEstimator;
+import com.schoeniu.maha.service.LeaderElectionService;
+import com.schoeniu.maha.service.MeshService;
+import com.schoeniu.maha.service.PodBudgetAllocator;
+import com.schoeniu.maha.service.PodStartupEstimator;
+import com.schoeniu.maha.service.ProductionRatioEstimator;
+import com.schoeniu.maha.service.QueueDepthPoller;
+import com.schoeniu.maha.service.QueueForecaster;
+import com.schoeniu.maha.service.RateService;
+import com.schoeniu.maha.service.ScalingSchedule;
+import com.schoeniu.maha.service.SqsQueueMetricsSource;
+import com.schoeniu.maha.service.WaitTimeEstimator;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.Topology;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Discrete-time simulation of a mesh scaled by the real {@link ScalingSchedule}. The schedule and all services it
+ * uses are wired without Spring, with the SQS and Kubernetes APIs replaced by a {@link SimulatedCluster} and the time
+ * replaced by a {@link SimulatedClock}, so a trace of hours runs in seconds. The schedule is triggered by the real
+ * {@link AdaptiveTickTrigger} in simulated time. Only the default mesh of the config is simulated.
+ */
+@Slf4j
+@Setter
+public class ScalingSimulator {
+
+    public static final String NAMESPACE = "cup";
+
+    private final ScalingConfigProperties scalingConfig;
+
+    private long stepMillis = 100;
+    private long podStartupMillis = 30_000;
+    private float consumptionRateFactor = 1.0F;
+    private int initialPods = 1;
+    private long maxDrainMillis = 3_600_000;
+    private boolean sharedCapacity;
+
+    /**
+     * @param scalingConfig scaling config to simulate, is not modified
+     */
+    public ScalingSimulator(final ScalingConfigProperties scalingConfig) {
+        this.scalingConfig = scalingConfig;
+    }
+
+    /**
+     * Loads the scaling config from a yaml resource on the classpath.
+     *
+     * @param resource classpath resource, e.g. application-test.yml
+     * @return bound scaling config
+     * @throws IOException if the resource could not be read
+     */
+    public static ScalingConfigProperties loadScalingConfig(final String resource) throws IOException {
+        final List<PropertySource<?>> sources = new YamlPropertySourceLoader().load(resource,
+                                                                                   new ClassPathResource(resource));
+        return new Binder(ConfigurationPropertySources.from(sources)).bind("scaling-config",
+                                                                          ScalingConfigProperties.class)
+                                                                    .orElseThrow(() -> new IllegalArgumentException(
+                                                                            "No scaling-config in " + resource));
+    }
+
+    /**
+     * Replays a trace until it ended and all consumed queues are drained, or the maximum drain time passed.
+     *
+     * @param trace arrivals on the origin queues
+     * @return outcome of the run
+     */
+    public SimulationResult run(final Trace trace) {
+        final long wallClockStart = System.currentTimeMillis();
+        final SimulatedClock clock = new SimulatedClock();
+        final MetricManager metricManager = new MetricManager(new SimpleMeterRegistry(), "maha-simulation");
+        final MeshService meshService = new MeshService(scalingConfig, NAMESPACE, "");
+        final Mesh mesh = meshService.getMesh(MeshService.DEFAULT_MESH);
+        final Topology topology = mesh.getTopology();
+
+        final float[] consumptionRates = new float[topology.getNumberOfQueues()];
+        for (int q = 0; q < consumptionRates.length; q++) {
+            consumptionRates[q] = topology.getConfiguredConsumptionRate(q) * consumptionRateFactor;
+        }
+        final long[] startupMillis = new long[topology.getNumberOfServices()];
+        Arrays.fill(startupMillis, podStartupMillis);
+
+        final PodStartupEstimator podStartupEstimator = new PodStartupEstimator(meshService, metricManager);
+        final SimulatedCluster cluster = new SimulatedCluster(mesh,
+                                                              podStartupEstimator,
+                                                              consumptionRates,
+                                                              startupMillis,
+                                                              sharedCapacity,
+                                                              initialPods,
+                                                              stepMillis);
+        final SimulatedK8sApi k8sApi = new SimulatedK8sApi(podStartupEstimator, meshService, cluster, clock);
+        final AdaptiveTickTrigger trigger = new AdaptiveTickTrigger(metricManager, 250, 1000, 5000, 0.1F);
+        final ScalingSchedule schedule =
+                new ScalingSchedule(metricManager,
+                                    new QueueDepthPoller(List.of(new SqsQueueMetricsSource(new SimulatedSqsApi(cluster))),
+                                                         metricManager),
+                                    k8sApi,
+                                    new RateService(new ConsumptionRateEstimator(meshService, null, metricManager),
+                                                    new ProductionRatioEstimator(meshService, null, metricManager)),
+                                    new QueueForecaster(metricManager),
+                                    podStartupEstimator,
+                                    new WaitTimeEstimator(meshService, null, metricManager),
+                                    new PodBudgetAllocator(metricManager),
+                                    new ConcurrencyScaler(k8sApi, null),
+                                    meshService,
+                                    new LeaderElectionService(k8sApi,
+                                                              metricManager,
+                                                              false,
+                                                              NAMESPACE,
+                                                              "maha-leader",
+                                                              15,
+                                                              "simulation"),
+                                    trigger,
+                                    clock);
+
+        final long activationPollMillis = mesh.getStrategy()
+                                              .getScaleToZero()
+                                              .getActivationPollMillis();
+        final SimpleTriggerContext triggerContext = new SimpleTriggerContext(clock);
+        Instant nextTick = trigger.nextExecution(triggerContext);
+        long nextActivation = activationPollMillis;
+        long ticks = 0;
+        long drainMillis = -1;
+        long now = 0;
+        try {
+            while (now < trace.getDurationMillis() + maxDrainMillis) {
+                cluster.advance(now, stepMillis, trace);
+                now += stepMillis;
+                clock.setMillis(now);
+                if (!nextTick.isAfter(clock.instant())) {
+                    final Instant scheduled = nextTick;
+                    schedule.schedule();
+                    ticks++;
+                    triggerContext.update(scheduled, clock.instant(), clock.instant());
+                    nextTick = trigger.nextExecution(triggerContext);
+                }
+                if (now >= nextActivation) {
+                    schedule.activateScaledToZeroServices();
+                    nextActivation += activationPollMillis;
+                }
+                if (now >= trace.getDurationMillis() && cluster.getBacklog() < 1) {
+                    drainMillis = now - trace.getDurationMillis();
+                    break;
+                }
+            }
+        } finally {
+            schedule.shutdown();
+        }
+
+        final SimulationResult result = new SimulationResult(drainMillis,
+                                                             cluster.getPodSeconds(),
+                                                             cluster.getMaxBacklog(),
+                                                             cluster.getWaitPercentileMillis(0.5),
+                                                             cluster.getWaitPercentileMillis(0.95),
+                                                             cluster.getWaitPercentileMillis(0.99),
+                                                             ticks,
+                                                             now,
+                                                             System.currentTimeMillis() - wallClockStart);
+        log.info("Simulation finished: {}", result);
+        return result;
+    }
+
+}
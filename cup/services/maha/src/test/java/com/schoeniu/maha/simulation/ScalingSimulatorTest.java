@@ -0,0 +1,90 @@
+package com.schoeniu.maha.simulation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+
+class ScalingSimulatorTest {
+
+    private static final long MINUTE = 60_000;
+
+    @Test
+    void followUpScalingReducesWaitingTime() throws IOException {
+        //given
+        final Trace trace = Trace.step("EXT_REQUEST", 100, 1500, 2 * MINUTE, 20 * MINUTE);
+
+        //when
+        final SimulationResult withFollowUp = simulate(true, trace);
+        final SimulationResult withoutFollowUp = simulate(false, trace);
+
+        //then
+        assertTrue(withFollowUp.drainMillis() >= 0);
+        assertTrue(withoutFollowUp.drainMillis() >= 0);
+        assertTrue(withFollowUp.waitP95Millis() < withoutFollowUp.waitP95Millis(),
+                   withFollowUp + " " + withoutFollowUp);
+    }
+
+    @Test
+    void spikeIsDrained() throws IOException {
+        //given
+        final Trace trace = Trace.spike("EXT_REQUEST", 50, 3000, 5 * MINUTE, MINUTE, 60 * MINUTE);
+
+        //when
+        final SimulationResult result = simulate(true, trace);
+
+        //then
+        assertTrue(result.drainMillis() >= 0);
+        assertTrue(result.maxBacklog() > 0);
+        assertTrue(result.getSpeedup() > 100, result.toString());
+    }
+
+    @Test
+    void sharedCapacityOfMultiQueueConsumerIsProvisioned() throws IOException {
+        //given
+        final Trace trace = Trace.step("EXT_REQUEST", 100, 1000, 2 * MINUTE, 20 * MINUTE);
+        final ScalingSimulator simulator =
+                new ScalingSimulator(ScalingSimulator.loadScalingConfig("application-test.yml"));
+        simulator.setSharedCapacity(true);
+
+        //when
+        final SimulationResult result = simulator.run(trace);
+
+        //then cup-process consumes three queues from the capacity of the same pods and still keeps up
+        assertTrue(result.drainMillis() >= 0, result.toString());
+        assertTrue(result.waitP95Millis() < 2 * MINUTE, result.toString());
+    }
+
+    @Test
+    void recordedTraceIsReplayed() throws IOException {
+        //given
+        final Trace trace = Trace.fromCsv(new StringReader("""
+                # seconds,queue,messagesPerMinute
+                0,EXT_REQUEST,200
+                60,EXT_REQUEST,800
+                120,EXT_REQUEST,0
+                """));
+
+        //when
+        final SimulationResult result = simulate(true, trace);
+
+        //then
+        assertEquals(800, trace.getRate("EXT_REQUEST", 90_000));
+        assertTrue(result.drainMillis() >= 0);
+        assertTrue(result.podSeconds() > 0);
+    }
+
+    private static SimulationResult simulate(final boolean followUpScalingEnabled, final Trace trace)
+            throws IOException {
+        final ScalingConfigProperties scalingConfig = ScalingSimulator.loadScalingConfig("application-test.yml");
+        scalingConfig.getStrategy()
+                     .setFollowUpScalingEnabled(followUpScalingEnabled);
+        return new ScalingSimulator(scalingConfig).run(trace);
+    }
+
+}
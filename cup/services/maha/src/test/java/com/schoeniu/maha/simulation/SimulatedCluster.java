@@ -0,0 +1,273 @@
+package com.schoeniu.maha.simulation;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.schoeniu.maha.service.PodStartupEstimator;
+import com.schoeniu.maha.topology.Mesh;
+import com.schoeniu.maha.topology.Topology;
+
+/**
+ * Fluid model of the queues and deployments of a mesh. Messages are kept as cohorts of the same arrival time in
+ * first-in-first-out order per queue. Every ready pod consumes the true consumption rate from each queue of its
+ * service, like the separate listeners of a CUP service do, and produces the follow-up messages of the consumed ones
+ * by the relative production rates. With shared capacity the listeners of a pod compete for its resources instead,
+ * so a pod spends its time on the queues of its service in queue order. Added pods only consume after their startup
+ * delay.
+ */
+public class SimulatedCluster {
+
+    private final Mesh mesh;
+    private final Topology topology;
+    private final PodStartupEstimator podStartupEstimator;
+    private final float[] consumptionRates;
+    private final long[] startupMillis;
+    private final boolean sharedCapacity;
+    private final double[] remainingPodMinutes;
+
+    private final int[][] outgoingEdges;
+    private final ArrayDeque<Cohort>[] queues;
+    private final double[] backlogs;
+    private final int[] readyPods;
+    private final ArrayDeque<Long>[] startingPods;
+
+    private final long bucketMillis;
+    private double[] waitHistogram = new double[1024];
+    private double podMillis;
+    private double maxBacklog;
+
+    /**
+     * @param mesh                mesh to simulate
+     * @param podStartupEstimator estimator to report pod startups to, like the pod informer does
+     * @param consumptionRates    true consumption rate per pod and queue ordinal, in messages per minute
+     * @param startupMillis       startup delay of added pods per service ordinal
+     * @param sharedCapacity      whether the queues of a service share the capacity of its pods
+     * @param initialPods         number of ready pods every deployment starts with
+     * @param bucketMillis        resolution of the recorded waiting times
+     */
+    @SuppressWarnings("unchecked")
+    public SimulatedCluster(final Mesh mesh,
+                            final PodStartupEstimator podStartupEstimator,
+                            final float[] consumptionRates,
+                            final long[] startupMillis,
+                            final boolean sharedCapacity,
+                            final int initialPods,
+                            final long bucketMillis) {
+        this.mesh = mesh;
+        this.topology = mesh.getTopology();
+        this.podStartupEstimator = podStartupEstimator;
+        this.consumptionRates = consumptionRates;
+        this.startupMillis = startupMillis;
+        this.sharedCapacity = sharedCapacity;
+        this.bucketMillis = bucketMillis;
+        final int n = topology.getNumberOfQueues();
+        final int m = topology.getNumberOfServices();
+        final int[] outDegrees = new int[n];
+        for (int e = 0; e < topology.getNumberOfEdges(); e++) {
+            outDegrees[topology.getEdgeSource(e)]++;
+        }
+        outgoingEdges = new int[n][];
+        for (int q = 0; q < n; q++) {
+            outgoingEdges[q] = new int[outDegrees[q]];
+            outDegrees[q] = 0;
+        }
+        for (int e = 0; e < topology.getNumberOfEdges(); e++) {
+            final int source = topology.getEdgeSource(e);
+            outgoingEdges[source][outDegrees[source]++] = e;
+        }
+        queues = new ArrayDeque[n];
+        for (int q = 0; q < n; q++) {
+            queues[q] = new ArrayDeque<>();
+        }
+        backlogs = new double[n];
+        readyPods = new int[m];
+        remainingPodMinutes = new double[m];
+        Arrays.fill(readyPods, initialPods);
+        startingPods = new ArrayDeque[m];
+        for (int s = 0; s < m; s++) {
+            startingPods[s] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Advances the cluster by one step: starts pods whose startup delay passed, adds the arrivals of the trace
+     * and consumes from every queue.
+     *
+     * @param now       start of the step in milliseconds since the start of the trace
+     * @param stepMillis length of the step
+     * @param trace     arrivals on the origin queues
+     */
+    public void advance(final long now, final long stepMillis, final Trace trace) {
+        final long end = now + stepMillis;
+        for (int s = 0; s < readyPods.length; s++) {
+            final ArrayDeque<Long> starting = startingPods[s];
+            while (!starting.isEmpty() && starting.peekFirst() <= end) {
+                starting.pollFirst();
+                readyPods[s]++;
+                podStartupEstimator.record(mesh.getNamespace(), topology.getService(s), startupMillis[s] / 1000.0F);
+            }
+            podMillis += (double) (readyPods[s] + starting.size()) * stepMillis;
+        }
+
+        for (int q = 0; q < queues.length; q++) {
+            final float rate = trace.getRate(topology.getQueue(q), now);
+            if (rate > 0) {
+                add(q, now, (double) rate * stepMillis / 60_000);
+            }
+        }
+
+        for (int s = 0; s < readyPods.length; s++) {
+            remainingPodMinutes[s] = (double) readyPods[s] * stepMillis / 60_000;
+        }
+        for (int q = 0; q < queues.length; q++) {
+            final int service = topology.getConsumerService(q);
+            if (service < 0 || backlogs[q] <= 0 || consumptionRates[q] <= 0) {
+                continue;
+            }
+            final double podMinutes = sharedCapacity
+                    ? remainingPodMinutes[service]
+                    : (double) readyPods[service] * stepMillis / 60_000;
+            final double consumed = consume(q, end, podMinutes * consumptionRates[q]);
+            if (consumed <= 0) {
+                continue;
+            }
+            remainingPodMinutes[service] = Math.max(0, remainingPodMinutes[service] - consumed / consumptionRates[q]);
+            for (int e : outgoingEdges[q]) {
+                add(topology.getEdgeTarget(e), end, consumed * topology.getConfiguredEdgeRate(e));
+            }
+        }
+
+        maxBacklog = Math.max(maxBacklog, getBacklog());
+    }
+
+    private void add(final int queue, final long time, final double count) {
+        final Cohort last = queues[queue].peekLast();
+        if (last != null && last.time == time) {
+            last.count += count;
+        } else {
+            queues[queue].addLast(new Cohort(time, count));
+        }
+        backlogs[queue] += count;
+    }
+
+    private double consume(final int queue, final long now, final double capacity) {
+        double remaining = capacity;
+        while (remaining > 0 && !queues[queue].isEmpty()) {
+            final Cohort first = queues[queue].peekFirst();
+            final double taken = Math.min(first.count, remaining);
+            recordWait(now - first.time, taken);
+            first.count -= taken;
+            remaining -= taken;
+            if (first.count <= 1e-9) {
+                queues[queue].pollFirst();
+            }
+        }
+        final double consumed = capacity - remaining;
+        backlogs[queue] = Math.max(0, backlogs[queue] - consumed);
+        return consumed;
+    }
+
+    private void recordWait(final long waitMillis, final double count) {
+        final int bucket = (int) (waitMillis / bucketMillis);
+        if (bucket >= waitHistogram.length) {
+            waitHistogram = Arrays.copyOf(waitHistogram, Math.max(bucket + 1, waitHistogram.length * 2));
+        }
+        waitHistogram[bucket] += count;
+    }
+
+    /**
+     * Scales a deployment. Added pods become ready after the startup delay, removed pods are taken from the
+     * starting ones first.
+     */
+    public void scale(final String service, final int replicas, final long now) {
+        final int s = topology.getServiceIndex(service);
+        if (s < 0) {
+            return;
+        }
+        final ArrayDeque<Long> starting = startingPods[s];
+        int current = readyPods[s] + starting.size();
+        for (; current < replicas; current++) {
+            starting.addLast(now + startupMillis[s]);
+        }
+        for (; current > replicas; current--) {
+            if (starting.isEmpty()) {
+                readyPods[s]--;
+            } else {
+                starting.pollLast();
+            }
+        }
+    }
+
+    /**
+     * @return replicas per deployment including the starting pods, as in the deployment spec
+     */
+    public Map<String, Integer> getReplicas() {
+        final Map<String, Integer> replicas = new HashMap<>();
+        for (int s = 0; s < readyPods.length; s++) {
+            replicas.put(topology.getService(s), readyPods[s] + startingPods[s].size());
+        }
+        return replicas;
+    }
+
+    /**
+     * @return number of messages in a queue, rounded like the approximate number of SQS
+     */
+    public int getNumberOfMessages(final String queue) {
+        final int q = topology.getQueueIndex(queue);
+        return q < 0 ? 0 : (int) Math.round(backlogs[q]);
+    }
+
+    /**
+     * @return number of messages in all consumed queues, queues without consumer never drain
+     */
+    public double getBacklog() {
+        double total = 0;
+        for (int q = 0; q < backlogs.length; q++) {
+            if (topology.getConsumerService(q) >= 0) {
+                total += backlogs[q];
+            }
+        }
+        return total;
+    }
+
+    public double getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    public double getPodSeconds() {
+        return podMillis / 1000;
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1
+     * @return waiting time of consumed messages at the quantile, at the upper bound of its bucket
+     */
+    public long getWaitPercentileMillis(final double quantile) {
+        double total = 0;
+        for (double count : waitHistogram) {
+            total += count;
+        }
+        double cumulated = 0;
+        for (int bucket = 0; bucket < waitHistogram.length; bucket++) {
+            cumulated += waitHistogram[bucket];
+            if (cumulated >= quantile * total) {
+                return (bucket + 1) * bucketMillis;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Cohort {
+
+        private final long time;
+        private double count;
+
+        private Cohort(final long time, final double count) {
+            this.time = time;
+            this.count = count;
+        }
+    }
+
+}
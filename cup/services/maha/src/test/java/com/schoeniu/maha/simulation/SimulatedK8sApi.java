@@ -0,0 +1,49 @@
+package com.schoeniu.maha.simulation;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+
+import com.schoeniu.maha.api.K8sApi;
+import com.schoeniu.maha.service.MeshService;
+import com.schoeniu.maha.service.PodStartupEstimator;
+
+/**
+ * Kubernetes API scaling the deployments of a simulated cluster. Scalings take effect immediately in the
+ * deployment spec, the pods only become ready after their startup delay.
+ */
+public class SimulatedK8sApi extends K8sApi {
+
+    private final SimulatedCluster cluster;
+    private final Clock clock;
+
+    public SimulatedK8sApi(final PodStartupEstimator podStartupEstimator,
+                           final MeshService meshService,
+                           final SimulatedCluster cluster,
+                           final Clock clock) {
+        super(null, null, null, List.of(podStartupEstimator), meshService, null, null);
+        this.cluster = cluster;
+        this.clock = clock;
+    }
+
+    @Override
+    public void scaleDeployment(final String namespace, final String deployment, final int replicas) {
+        cluster.scale(deployment, replicas, clock.millis());
+    }
+
+    @Override
+    public Map<String, Integer> getReplicasPerDeployment(final String namespace) {
+        return cluster.getReplicas();
+    }
+
+    @Override
+    public void startInformers() {
+        // the simulated cluster needs no informers
+    }
+
+    @Override
+    public void stopInformers() {
+        // the simulated cluster needs no informers
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.schoeniu.maha.simulation;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.schoeniu.maha.api.QueueMetrics;
+import com.schoeniu.maha.api.SqsApi;
+
+/**
+ * SQS API reading the queue depths of a simulated cluster.
+ */
+public class SimulatedSqsApi extends SqsApi {
+
+    private final SimulatedCluster cluster;
+
+    public SimulatedSqsApi(final SimulatedCluster cluster) {
+        super(null, null, null);
+        this.cluster = cluster;
+    }
+
+    @Override
+    public CompletableFuture<QueueMetrics> getQueueMetricsAsync(final String queueName) {
+        return CompletableFuture.completedFuture(new QueueMetrics(cluster.getNumberOfMessages(queueName), 0, 0));
+    }
+
+}
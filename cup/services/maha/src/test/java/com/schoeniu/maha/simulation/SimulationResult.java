@@ -0,0 +1,33 @@
+package com.schoeniu.maha.simulation;
+
+/**
+ * Outcome of a simulation run.
+ *
+ * @param drainMillis      time from the end of the trace until all consumed queues were empty, -1 if they never were
+ * @param podSeconds       pod-seconds of all deployments, including starting pods
+ * @param maxBacklog       highest number of messages in all consumed queues
+ * @param waitP50Millis    median waiting time of the consumed messages in their queue
+ * @param waitP95Millis    95th percentile of the waiting time
+ * @param waitP99Millis    99th percentile of the waiting time
+ * @param ticks            number of schedule iterations
+ * @param simulatedMillis  simulated time
+ * @param wallClockMillis  real time the simulation took
+ */
+public record SimulationResult(long drainMillis,
+                               double podSeconds,
+                               double maxBacklog,
+                               long waitP50Millis,
+                               long waitP95Millis,
+                               long waitP99Millis,
+                               long ticks,
+                               long simulatedMillis,
+                               long wallClockMillis) {
+
+    /**
+     * @return how many times faster than real time the simulation ran
+     */
+    public double getSpeedup() {
+        return simulatedMillis / (double) Math.max(1, wallClockMillis);
+    }
+
+}
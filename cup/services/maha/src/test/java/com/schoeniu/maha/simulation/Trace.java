@@ -0,0 +1,132 @@
+package com.schoeniu.maha.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Arrival rates of messages on the origin queues of a mesh over time, in messages per minute.
+ * Rates are piecewise constant, a rate holds until the next change of the same queue.
+ */
+public final class Trace {
+
+    private static final long RAMP_STEP_MILLIS = 1000;
+
+    private final Map<String, TreeMap<Long, Float>> rates = new HashMap<>();
+    private long durationMillis;
+
+    private Trace(final long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Constant rate on one queue.
+     */
+    public static Trace constant(final String queue, final float rate, final long durationMillis) {
+        return new Trace(durationMillis).with(queue, 0, rate);
+    }
+
+    /**
+     * Rate on one queue jumping from a base rate to a higher rate at a given time and staying there.
+     */
+    public static Trace step(final String queue,
+                             final float baseRate,
+                             final float stepRate,
+                             final long stepAtMillis,
+                             final long durationMillis) {
+        return new Trace(durationMillis).with(queue, 0, baseRate)
+                                        .with(queue, stepAtMillis, stepRate);
+    }
+
+    /**
+     * Rate on one queue increasing linearly over the whole duration.
+     */
+    public static Trace ramp(final String queue, final float fromRate, final float toRate, final long durationMillis) {
+        final Trace trace = new Trace(durationMillis);
+        for (long time = 0; time < durationMillis; time += RAMP_STEP_MILLIS) {
+            trace.with(queue, time, fromRate + (toRate - fromRate) * time / durationMillis);
+        }
+        return trace;
+    }
+
+    /**
+     * Base rate on one queue with a burst of a higher rate for a given length.
+     */
+    public static Trace spike(final String queue,
+                              final float baseRate,
+                              final float spikeRate,
+                              final long spikeAtMillis,
+                              final long spikeLengthMillis,
+                              final long durationMillis) {
+        return new Trace(durationMillis).with(queue, 0, baseRate)
+                                        .with(queue, spikeAtMillis, spikeRate)
+                                        .with(queue, spikeAtMillis + spikeLengthMillis, baseRate);
+    }
+
+    /**
+     * Reads a recorded trace with lines of "seconds,queue,messagesPerMinute". Empty lines and lines starting with
+     * # are skipped. The trace lasts until the last recorded change.
+     *
+     * @param reader source of the recording
+     * @return trace of the recording
+     * @throws IOException if the recording could not be read
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static Trace fromCsv(final Reader reader) throws IOException {
+        final Trace trace = new Trace(0);
+        try (BufferedReader lines = new BufferedReader(reader)) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                final String[] columns = line.split(",");
+                if (columns.length != 3) {
+                    throw new IllegalArgumentException("Malformed trace line: " + line);
+                }
+                final long time = (long) (Double.parseDouble(columns[0].trim()) * 1000);
+                trace.with(columns[1].trim(), time, Float.parseFloat(columns[2].trim()));
+                trace.durationMillis = Math.max(trace.durationMillis, time);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Combines this trace with another one, e.g. to feed several origin queues.
+     */
+    public Trace and(final Trace other) {
+        final Trace combined = new Trace(Math.max(durationMillis, other.durationMillis));
+        rates.forEach((queue, changes) -> changes.forEach((time, rate) -> combined.with(queue, time, rate)));
+        other.rates.forEach((queue, changes) -> changes.forEach((time, rate) -> combined.with(queue, time, rate)));
+        return combined;
+    }
+
+    private Trace with(final String queue, final long time, final float rate) {
+        rates.computeIfAbsent(queue, q -> new TreeMap<>())
+             .put(time, rate);
+        return this;
+    }
+
+    /**
+     * @param queue queue name
+     * @param time  milliseconds since the start of the trace
+     * @return arrival rate in messages per minute, 0 after the end of the trace
+     */
+    public float getRate(final String queue, final long time) {
+        final TreeMap<Long, Float> changes = rates.get(queue);
+        if (changes == null || time >= durationMillis) {
+            return 0;
+        }
+        final Map.Entry<Long, Float> change = changes.floorEntry(time);
+        return change == null ? 0 : change.getValue();
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.schoeniu.maha.topology;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.schoeniu.maha.config.properties.ScalingConfigProperties;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ConsumerServiceConfig;
+import com.schoeniu.maha.config.properties.ScalingConfigProperties.ProducerQueueConfig;
+
+class TopologyTest {
+
+    @Test
+    void propagateSharedSubpathsOnce() {
+        //given A -> B, A -> C, B -> D, C -> D
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setQueuesConsumedFrom(new LinkedHashMap<>());
+        addQueue(config, "A", Map.of("B", 1.0F, "C", 0.5F));
+        addQueue(config, "B", Map.of("D", 1.0F));
+        addQueue(config, "C", Map.of("D", 2.0F));
+        addQueue(config, "D", Map.of());
+        Topology systemUnderTest = Topology.compile(config.getQueuesConsumedFrom());
+
+        //when
+        float[] total = propagate(systemUnderTest, 100, 0, 10, 0);
+
+        //then
+        assertArrayEquals(new float[] { 100, 100, 60, 220 }, total, 0.001F);
+    }
+
+    @Test
+    void propagateConvergesForRetryCycle() {
+        //given A -> B, B -> A (retry of 10%), B -> C
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setQueuesConsumedFrom(new LinkedHashMap<>());
+        addQueue(config, "A", Map.of("B", 1.0F));
+        addQueue(config, "B", Map.of("A", 0.1F, "C", 0.9F));
+        addQueue(config, "C", Map.of());
+        Topology systemUnderTest = Topology.compile(config.getQueuesConsumedFrom());
+
+        //when
+        float[] total = propagate(systemUnderTest, 90, 0, 0);
+
+        //then geometric series 90 / (1 - 0.1)
+        assertArrayEquals(new float[] { 100, 100, 90 }, total, 0.1F);
+    }
+
+    @Test
+    void compileRejectsDivergentCycle() {
+        //given A -> B, B -> A without loss
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setQueuesConsumedFrom(new LinkedHashMap<>());
+        addQueue(config, "A", Map.of("B", 1.0F));
+        addQueue(config, "B", Map.of("A", 1.0F));
+
+        //when then
+        assertThrows(IllegalStateException.class, () -> Topology.compile(config.getQueuesConsumedFrom()));
+    }
+
+    @Test
+    void convergesRejectsLearnedRatesOfDivergentCycle() {
+        //given A -> B, B -> A (retry of 10%), B -> C
+        ScalingConfigProperties config = new ScalingConfigProperties();
+        config.setQueuesConsumedFrom(new LinkedHashMap<>());
+        addQueue(config, "A", Map.of("B", 1.0F));
+        addQueue(config, "B", Map.of("A", 0.1F, "C", 0.9F));
+        addQueue(config, "C", Map.of());
+        Topology systemUnderTest = Topology.compile(config.getQueuesConsumedFrom());
+        float[] edgeRates = new float[systemUnderTest.getNumberOfEdges()];
+        for (int edge = 0; edge < edgeRates.length; edge++) {
+            edgeRates[edge] = systemUnderTest.getConfiguredEdgeRate(edge);
+        }
+
+        //when the retry rate is learned higher, but still below 1 per round trip
+        edgeRates[getEdge(systemUnderTest, "B", "A")] = 0.5F;
+
+        //then
+        assertTrue(systemUnderTest.converges(edgeRates));
+
+        //when every message is learned to be retried
+        edgeRates[getEdge(systemUnderTest, "B", "A")] = 1.0F;
+
+        //then
+        assertFalse(systemUnderTest.converges(edgeRates));
+    }
+
+    private int getEdge(final Topology topology, final String source, final String target) {
+        for (int edge = 0; edge < topology.getNumberOfEdges(); edge++) {
+            if (topology.getQueue(topology.getEdgeSource(edge))
+                        .equals(source)
+                && topology.getQueue(topology.getEdgeTarget(edge))
+                           .equals(target)) {
+                return edge;
+            }
+        }
+        throw new IllegalArgumentException("No edge from " + source + " to " + target);
+    }
+
+    private float[] propagate(final Topology topology, final float... origin) {
+        float[] edgeRates = new float[topology.getNumberOfEdges()];
+        for (int edge = 0; edge < edgeRates.length; edge++) {
+            edgeRates[edge] = topology.getConfiguredEdgeRate(edge);
+        }
+        float[] total = new float[topology.getNumberOfQueues()];
+        topology.propagate(origin, edgeRates, total);
+        return total;
+    }
+
+    private void addQueue(final ScalingConfigProperties config,
+                          final String queue,
+                          final Map<String, Float> producedTo) {
+        ConsumerServiceConfig consumer = new ConsumerServiceConfig();
+        consumer.setServiceName("service-" + queue);
+        consumer.setConsumptionRate(100);
+        Map<String, ProducerQueueConfig> queuesProducedTo = new LinkedHashMap<>();
+        producedTo.forEach((producedQueue, rate) -> {
+            ProducerQueueConfig producerConfig = new ProducerQueueConfig();
+            producerConfig.setRelativeProductionRate(rate);
+            queuesProducedTo.put(producedQueue, producerConfig);
+        });
+        consumer.setQueuesProducedTo(queuesProducedTo);
+        config.getQueuesConsumedFrom()
+              .put(queue, consumer);
+    }
+}
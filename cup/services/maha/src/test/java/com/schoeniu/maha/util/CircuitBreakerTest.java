@@ -0,0 +1,58 @@
+package com.schoeniu.maha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailuresAndClosesAfterSuccessfulTrialCall() {
+        //given
+        CircuitBreaker systemUnderTest = new CircuitBreaker(3, 10_000L);
+
+        //when a success resets the consecutive failures
+        systemUnderTest.recordFailure(0L);
+        systemUnderTest.recordFailure(0L);
+        systemUnderTest.recordSuccess();
+        systemUnderTest.recordFailure(1_000L);
+        systemUnderTest.recordFailure(1_000L);
+
+        //then
+        assertTrue(systemUnderTest.tryAcquire(1_000L));
+
+        //when
+        systemUnderTest.recordFailure(2_000L);
+
+        //then calls are rejected until the open time passed, then only one trial call is permitted
+        assertEquals(CircuitBreaker.State.OPEN, systemUnderTest.getState());
+        assertFalse(systemUnderTest.tryAcquire(11_999L));
+        assertTrue(systemUnderTest.tryAcquire(12_000L));
+        assertFalse(systemUnderTest.tryAcquire(12_000L));
+
+        //when
+        systemUnderTest.recordSuccess();
+
+        //then
+        assertEquals(CircuitBreaker.State.CLOSED, systemUnderTest.getState());
+        assertTrue(systemUnderTest.tryAcquire(12_000L));
+    }
+
+    @Test
+    void failedTrialCallReopens() {
+        //given
+        CircuitBreaker systemUnderTest = new CircuitBreaker(1, 10_000L);
+        systemUnderTest.recordFailure(0L);
+
+        //when
+        assertTrue(systemUnderTest.tryAcquire(10_000L));
+        systemUnderTest.recordFailure(10_500L);
+
+        //then the open time starts again with the failed trial call
+        assertEquals(CircuitBreaker.State.OPEN, systemUnderTest.getState());
+        assertFalse(systemUnderTest.tryAcquire(20_000L));
+        assertTrue(systemUnderTest.tryAcquire(20_500L));
+    }
+}
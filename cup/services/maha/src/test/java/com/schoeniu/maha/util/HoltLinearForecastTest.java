@@ -0,0 +1,37 @@
+package com.schoeniu.maha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class HoltLinearForecastTest {
+
+    @Test
+    void forecastFollowsLinearRamp() {
+        //given
+        HoltLinearForecast systemUnderTest = new HoltLinearForecast(0.5F, 0.3F);
+
+        //when 10 messages more every second
+        for (int second = 0; second <= 60; second++) {
+            systemUnderTest.update(second * 1000L, second * 10F);
+        }
+
+        //then
+        assertEquals(900F, systemUnderTest.forecast(30_000L), 1F);
+        assertEquals(600F, systemUnderTest.getTrend(), 1F);
+    }
+
+    @Test
+    void forecastStaysFlatForConstantValues() {
+        //given
+        HoltLinearForecast systemUnderTest = new HoltLinearForecast(0.5F, 0.3F);
+
+        //when
+        for (int second = 0; second <= 10; second++) {
+            systemUnderTest.update(second * 1000L, 100F);
+        }
+
+        //then
+        assertEquals(100F, systemUnderTest.forecast(30_000L), 0.01F);
+    }
+}
@@ -0,0 +1,56 @@
+package com.schoeniu.maha.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowMaxTest {
+
+    @Test
+    void maxIsKeptUntilItLeavesTheWindow() {
+        //given
+        SlidingWindowMax systemUnderTest = new SlidingWindowMax(10_000L);
+
+        //when
+        systemUnderTest.add(0L, 17);
+        systemUnderTest.add(1_000L, 3);
+        systemUnderTest.add(5_000L, 5);
+
+        //then
+        assertEquals(17, systemUnderTest.getMax(9_000L, 0));
+        assertEquals(5, systemUnderTest.getMax(10_000L, 0));
+        assertEquals(5, systemUnderTest.getMax(20_000L, 0));
+    }
+
+    @Test
+    void windowGrowsBeyondInitialCapacity() {
+        //given
+        SlidingWindowMax systemUnderTest = new SlidingWindowMax(100_000L);
+
+        //when decreasing values are all kept
+        for (int second = 0; second < 50; second++) {
+            systemUnderTest.add(second * 1000L, 100 - second);
+        }
+
+        //then
+        assertEquals(100, systemUnderTest.getMax(50_000L, 0));
+        assertEquals(59, systemUnderTest.getMax(140_000L, 0));
+    }
+
+    @Test
+    void resizeKeepsSamplesWithinNewWindow() {
+        //given
+        SlidingWindowMax window = new SlidingWindowMax(300_000L);
+        window.add(0L, 17);
+        window.add(100_000L, 9);
+        window.add(200_000L, 4);
+
+        //when
+        SlidingWindowMax systemUnderTest = window.resize(150_000L);
+
+        //then
+        assertEquals(150_000L, systemUnderTest.getWindowMillis());
+        assertEquals(9, systemUnderTest.getMax(200_000L, 0));
+        assertEquals(4, systemUnderTest.getMax(250_000L, 0));
+    }
+}